@@ -41,6 +41,27 @@ class LicensePluginTest {
             )
     }
 
+    /**
+     * Test that the dependencies collected in metadata resolution mode are the ones of artifact resolution mode
+     * for a dependency with no declared artifacts and non-jar packaging.
+     */
+    @Test
+    fun testResolutionModes() {
+        gradle {
+            testProjectName = "zip-with-dependencies"
+            tasks = arrayOf("publishToMavenLocal")
+        }
+        val dependencies = listOf(arrayOf<String>(), arrayOf("-Plicense.resolution-mode=metadata")).map { resolutionMode ->
+            val projectPath = gradle {
+                testProjectName = "resolution-modes"
+                additionalArguments = arrayOf("-PexcludeIbmGroups", "-Psupported-groups=org.octopusden.octopus") + resolutionMode
+            }
+            String(Files.readAllBytes(projectPath.resolve("build/dependencies.json")))
+        }
+        assertThat(dependencies[0]).contains("\"extension\": \"zip\"")
+        assertThat(dependencies[1]).isEqualTo(dependencies[0])
+    }
+
     @Test
     fun testTransitiveExclusion() {
         val projectPath = gradle {
@@ -80,6 +101,27 @@ class LicensePluginTest {
             )
     }
 
+    /**
+     * Test that the dependency graphs are task inputs stored by the configuration cache and the entry is reused.
+     */
+    @Test
+    fun testConfigurationCache() {
+        repeat(2) {
+            val projectPath = gradle {
+                testProjectName = "single-module"
+                additionalArguments = arrayOf("--configuration-cache")
+            }
+            assertThat(projectPath.resolve(".gradle/configuration-cache")).isDirectory()
+            assertThat(zipTreeEntries(projectPath.resolve("build/distr/single-module.zip")))
+                .containsOnly(
+                    ZipTreeEntry("licenses/apache-2.0 - apache-2.0.txt"),
+                    ZipTreeEntry("licenses/THIRD-PARTY.txt"),
+                    ZipTreeEntry("sshd-common-2.6.0.jar"),
+                    ZipTreeEntry("sshd-core-2.6.0.jar")
+                )
+        }
+    }
+
     @Test
     fun testMultiModule() {
         val projectPath = gradle {
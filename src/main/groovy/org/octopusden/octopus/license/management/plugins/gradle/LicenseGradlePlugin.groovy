@@ -6,6 +6,7 @@ import org.octopusden.octopus.license.management.plugins.gradle.tasks.LicenseMan
 import org.octopusden.octopus.license.management.plugins.gradle.tasks.ProcessNodeLicensesTask
 import org.octopusden.octopus.license.management.plugins.gradle.tasks.LicenseTask
 import org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask
+import org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensesSplittingTask
 import org.gradle.api.DefaultTask
 import org.gradle.api.Plugin
 import org.gradle.api.Project
@@ -52,6 +53,136 @@ class LicenseGradlePlugin implements Plugin<Project> {
                 ?: project.findProperty(LICENSE_REGISTRY_GIT_REPOSITORY_PROPERTY_NAME)
     }
 
+    public final static String LICENSE_REGISTRY_REFRESH_INTERVAL_PROPERTY_NAME = "license-registry.refresh-interval"
+    private final static long DEFAULT_LICENSE_REGISTRY_REFRESH_INTERVAL = 60
+
+    /**
+     * @return minimal interval in minutes between updates of the license registry copy
+     */
+    static long getLicenseRegistryRefreshInterval(Project project) {
+        def refreshInterval = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_REGISTRY_REFRESH_INTERVAL_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_REGISTRY_REFRESH_INTERVAL_PROPERTY_NAME)
+        return refreshInterval != null ? refreshInterval.toString() as long : DEFAULT_LICENSE_REGISTRY_REFRESH_INTERVAL
+    }
+
+    public final static String LICENSE_REGISTRY_FETCH_MODE_PROPERTY_NAME = "license-registry.fetch-mode"
+    public final static String LICENSE_REGISTRY_PARTIAL_FETCH_MODE = "partial"
+
+    /**
+     * @return {@code true} if only the license registry files used by the build have to be fetched
+     */
+    static boolean isLicenseRegistryPartialFetch(Project project) {
+        def fetchMode = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_REGISTRY_FETCH_MODE_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_REGISTRY_FETCH_MODE_PROPERTY_NAME)
+        return LICENSE_REGISTRY_PARTIAL_FETCH_MODE.equalsIgnoreCase(fetchMode?.toString())
+    }
+
+    public final static String LICENSE_RESOLUTION_MODE_PROPERTY_NAME = "license.resolution-mode"
+    public final static String LICENSE_METADATA_RESOLUTION_MODE = "metadata"
+
+    /**
+     * @return {@code true} if dependencies have to be collected from the dependency graph metadata only, without artifacts
+     */
+    static boolean isMetadataResolutionMode(Project project) {
+        def resolutionMode = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_RESOLUTION_MODE_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_RESOLUTION_MODE_PROPERTY_NAME)
+        return LICENSE_METADATA_RESOLUTION_MODE.equalsIgnoreCase(resolutionMode?.toString())
+    }
+
+    public final static String LICENSE_POM_RESOLUTION_PROPERTY_NAME = "license.pom-resolution"
+    public final static String LICENSE_GRADLE_POM_RESOLUTION = "gradle"
+
+    /**
+     * @return {@code true} if the licenses of dependencies have to be read from the POMs resolved by Gradle,
+     * Maven is run for the dependencies whose licenses are not found in the POMs only
+     */
+    static boolean isGradlePomResolution(Project project) {
+        def pomResolution = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_POM_RESOLUTION_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_POM_RESOLUTION_PROPERTY_NAME)
+        return LICENSE_GRADLE_POM_RESOLUTION.equalsIgnoreCase(pomResolution?.toString())
+    }
+
+    public final static String LICENSE_DEPENDENCIES_SNAPSHOT_PROPERTY_NAME = "license.dependencies-snapshot"
+
+    /**
+     * @return {@code true} if the dependencies list has to be written as a binary snapshot as well and read from it
+     */
+    static boolean isDependenciesSnapshotEnabled(Project project) {
+        def snapshot = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_DEPENDENCIES_SNAPSHOT_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_DEPENDENCIES_SNAPSHOT_PROPERTY_NAME)
+        return Boolean.parseBoolean(snapshot?.toString())
+    }
+
+    public final static String LICENSE_DEPENDENCIES_SPILL_THRESHOLD_PROPERTY_NAME = "license.dependencies-spill-threshold"
+
+    /**
+     * @return number of distinct dependencies held in memory before they are spilled to disk,
+     * {@code null} if the dependencies are merged in memory only
+     */
+    static Integer getDependenciesSpillThreshold(Project project) {
+        def threshold = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_DEPENDENCIES_SPILL_THRESHOLD_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_DEPENDENCIES_SPILL_THRESHOLD_PROPERTY_NAME)
+        return threshold ? Integer.valueOf(threshold.toString().trim()) : null
+    }
+
+    public final static String LICENSE_MAVEN_EXECUTION_PROPERTY_NAME = "license.maven-execution"
+    public final static String LICENSE_EMBEDDED_MAVEN_EXECUTION = "embedded"
+    public final static String LICENSE_MAVEN_DAEMON_EXECUTION = "mvnd"
+
+    /**
+     * @return {@code true} if Maven has to be run through the Maven embedder in a Gradle worker instead of a forked process
+     */
+    static boolean isEmbeddedMavenExecution(Project project) {
+        return LICENSE_EMBEDDED_MAVEN_EXECUTION.equalsIgnoreCase(getMavenExecution(project))
+    }
+
+    /**
+     * @return {@code true} if Maven has to be run through the warm maven daemon {@code mvnd} instead of a cold {@code mvn}
+     */
+    static boolean isMavenDaemonExecution(Project project) {
+        return LICENSE_MAVEN_DAEMON_EXECUTION.equalsIgnoreCase(getMavenExecution(project))
+    }
+
+    private static String getMavenExecution(Project project) {
+        def execution = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_MAVEN_EXECUTION_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_MAVEN_EXECUTION_PROPERTY_NAME)
+        return execution?.toString()
+    }
+
+    public final static String LICENSE_RESULT_CACHE_PROPERTY_NAME = "license.result-cache"
+
+    /**
+     * @return {@code true} if the license results of dependencies have to be kept between builds and Maven has to be run
+     * for the dependencies without kept results only
+     */
+    static boolean isLicenseResultCacheEnabled(Project project) {
+        def resultCache = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_RESULT_CACHE_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_RESULT_CACHE_PROPERTY_NAME)
+        return Boolean.parseBoolean(resultCache?.toString())
+    }
+
+    public final static String LICENSE_AGGREGATED_MAVEN_RUN_PROPERTY_NAME = "license.aggregated-maven-run"
+    public final static String AGGREGATED_LICENSES_TASK_NAME = "processAggregatedLicenses"
+    private final static String AGGREGATED_LICENSES_DIR = "build/aggregated-licenses"
+
+    /**
+     * @return {@code true} if Maven has to be run once for the whole build and the module licenses have to be taken from its output
+     */
+    static boolean isAggregatedMavenRun(Project project) {
+        def aggregatedRun = MavenParametersUtils.getLicenseParametersProperty(project, LICENSE_AGGREGATED_MAVEN_RUN_PROPERTY_NAME)
+                ?: project.findProperty(LICENSE_AGGREGATED_MAVEN_RUN_PROPERTY_NAME)
+        return Boolean.parseBoolean(aggregatedRun?.toString())
+    }
+
+    /**
+     * @return {@code true} if the resolved dependency graphs have to be collected,
+     * the aggregated Maven run, the licenses read from POMs and the license result cache take the transitive dependencies
+     * of every module from them
+     */
+    static boolean isTransitiveDependenciesCollected(Project project) {
+        return isAggregatedMavenRun(project) || isGradlePomResolution(project) || isLicenseResultCacheEnabled(project)
+    }
+
     private static String getEnvPath(Project project) {
         return ProcessNodeLicensesTask.getEnvPath(project)
     }
@@ -65,9 +196,9 @@ class LicenseGradlePlugin implements Plugin<Project> {
                 group = null
                 args = ['install']
                 environment['PATH'] = getEnvPath(project)
+                def nodeProjectDir = project.node.nodeProjectDir
                 doFirst {
-                    def task = project.tasks.findByName(ProcessNodeLicensesTask.NAME) as ProcessNodeLicensesTask
-                    assert new File(task.getWorkingDir(project), PACKAGE_JSON).exists()
+                    assert new File(nodeProjectDir.get().asFile, PACKAGE_JSON).exists()
                 }
             }
             project.tasks.register("nodeLicenseCheckerInstall", YarnTask) {
@@ -96,7 +227,7 @@ class LicenseGradlePlugin implements Plugin<Project> {
                 dependsOn(['nodeLicenseCheckerInstall', 'yarnModulesInstall'])
             }
             project.afterEvaluate {
-                if (processNodeLicensesTask.licenseRegistry == null) {
+                if (processNodeLicensesTask.licenseRegistryGitRepository == null) {
                     throw new IllegalArgumentException("Property '$LICENSE_REGISTRY_GIT_REPOSITORY_PROPERTY_NAME' must be specified")
                 }
                 if (processNodeLicensesTask.production) {
@@ -131,19 +262,61 @@ class LicenseGradlePlugin implements Plugin<Project> {
         }
         createTask(project, false)
         createTask(project, true)
+        if (project == project.rootProject && isAggregatedMavenRun(project)) {
+            createAggregatedLicensesTask(project)
+        }
     }
 
     static def createTask(Project project, boolean onlyCurrent) {
         def processLicensedDependenciesTaskName = onlyCurrent ? "processModuleLicensedDependencies" : "processLicensedDependencies"
         def processLicensesTaskName = onlyCurrent ? "processModuleLicenses" : "processLicenses"
 
-        Task processLicensedDependencies = project.getTasks().create(processLicensedDependenciesTaskName, LicensedDependenciesAnalyzingTask.class) {
+        LicensedDependenciesAnalyzingTask processLicensedDependencies = project.getTasks().create(processLicensedDependenciesTaskName, LicensedDependenciesAnalyzingTask.class) {
             onlyCurrentProject = onlyCurrent
         }
-        Task processLicenses = project.getTasks().create(processLicensesTaskName, LicenseTask.class)
+        (onlyCurrent ? [project] : project.rootProject.allprojects.sort { it.path }).each {
+            processLicensedDependencies.analyze(it)
+        }
+        Task processLicenses
+        if (onlyCurrent && isAggregatedMavenRun(project)) {
+            processLicenses = project.getTasks().create(processLicensesTaskName, LicensesSplittingTask.class) {
+                sourceDependencies = processLicensedDependencies.dependenciesListFile.path
+                sourceTransitiveDependencies = processLicensedDependencies.transitiveDependenciesFile.path
+                aggregatedLicensesDirectory = new File(project.rootDir, "$AGGREGATED_LICENSES_DIR/licenses")
+            }
+            processLicenses.dependsOn(":$AGGREGATED_LICENSES_TASK_NAME")
+        } else {
+            processLicenses = project.getTasks().create(processLicensesTaskName, LicenseTask.class)
+        }
         def isLicenseCheckRequired = propertyIsFalse(project, LICENSE_SKIP_PROPERTY)
         processLicensedDependencies.onlyIf { return isLicenseCheckRequired }
         processLicenses.dependsOn(processLicensedDependencies)
         processLicenses.onlyIf { return isLicenseCheckRequired }
     }
+
+    /**
+     * Creates the license tasks of the root project which run Maven once for the dependencies of all projects,
+     * they are shared by the module license tasks of the aggregated Maven run.
+     * The module tasks depend on them by path, so the plugin has to be applied to the root project.
+     */
+    private static void createAggregatedLicensesTask(Project rootProject) {
+        LicensedDependenciesAnalyzingTask processLicensedDependencies = rootProject.getTasks().create("processAggregatedLicensedDependencies", LicensedDependenciesAnalyzingTask.class) {
+            destinationDir = AGGREGATED_LICENSES_DIR
+        }
+        rootProject.allprojects.sort { it.path }.each {
+            processLicensedDependencies.analyze(it)
+        }
+        LicenseTask processLicenses = rootProject.getTasks().create(AGGREGATED_LICENSES_TASK_NAME, LicenseTask.class) {
+            destinationDir = AGGREGATED_LICENSES_DIR
+            aggregatedMavenRun = true
+            sourceDependencies = "$AGGREGATED_LICENSES_DIR/dependencies.json"
+            sourceDependenciesSnapshot = "$AGGREGATED_LICENSES_DIR/dependencies.bin"
+            sourcePomLicenses = "$AGGREGATED_LICENSES_DIR/pom-licenses.json"
+            sourceTransitiveDependencies = "$AGGREGATED_LICENSES_DIR/transitive-dependencies.json"
+        }
+        def isLicenseCheckRequired = propertyIsFalse(rootProject, LICENSE_SKIP_PROPERTY)
+        processLicensedDependencies.onlyIf { return isLicenseCheckRequired }
+        processLicenses.dependsOn(processLicensedDependencies)
+        processLicenses.onlyIf { return isLicenseCheckRequired }
+    }
 }
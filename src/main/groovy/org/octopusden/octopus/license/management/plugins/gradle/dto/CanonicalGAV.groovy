@@ -0,0 +1,41 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto
+
+import groovy.transform.EqualsAndHashCode
+
+/**
+ * Dependency coordinates with the list of configurations the dependency is used in.
+ * Records are equal if the coordinates and the exclude rules are equal, the usages are not compared.
+ */
+@EqualsAndHashCode(excludes = ["usages"])
+class CanonicalGAV implements Serializable {
+    String group
+    String artifact
+    String version
+    String classifier
+    String extension
+    List<MavenExcludeRule> excludeRules
+    List<DependencyUsage> usages = []
+
+    def logString() {
+        "$group:$artifact" + (version ? ":$version" : "") +
+                (classifier ? ":$classifier" : "") +
+                (extension ? "@$extension" : "") +
+                (excludeRules ? "{\n" +
+                        excludeRules.collect { "exclude(group = ${it.group}, module = ${it.artifact})" }.join("\n") +
+                        "\n}" : "") +
+                (usages ? " <- " + usages.collect { "${it.project}:${it.configuration}" }.join(", ") : "")
+    }
+
+    /**
+     * Merges per configuration dependencies into canonical records, one record per coordinates and exclude rules.
+     * The usages of the same configuration are shared by the records.
+     */
+    static List<CanonicalGAV> fromMavenGAVs(Collection<MavenGAV> dependencies) {
+        def graph = new DependencyGraph()
+        dependencies.each { MavenGAV gav ->
+            int dependency = graph.add(gav.group, gav.artifact, gav.version, gav.classifier, gav.extension, gav.excludeRules)
+            graph.addUsage(dependency, new DependencyUsage(gav.project, gav.configuration))
+        }
+        return new ArrayList<>(graph.canonicalGAVs)
+    }
+}
@@ -0,0 +1,16 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto
+
+import groovy.transform.EqualsAndHashCode
+
+/**
+ * Dependencies resolved from the configurations of a project together with the resolution problems,
+ * whether the resolution failed in the strict resolver mode, the resolved dependency graph and the licenses read from the POMs of the dependencies, see {@link org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicenseResolver}.
+ */
+@EqualsAndHashCode
+class CollectedDependencies implements Serializable {
+    List<CanonicalGAV> dependencies = []
+    String resolvingProblems = ""
+    boolean resolvingFailed = false
+    Map<String, Set<String>> transitiveDependencies = [:]
+    Map<String, ModuleLicenses> pomLicenses = [:]
+}
@@ -0,0 +1,12 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto
+
+import groovy.transform.Canonical
+
+/**
+ * Configuration of a project a dependency is declared in.
+ */
+@Canonical
+class DependencyUsage implements Serializable {
+    String project
+    String configuration
+}
@@ -3,7 +3,7 @@ package org.octopusden.octopus.license.management.plugins.gradle.dto
 import groovy.transform.Canonical
 
 @Canonical
-class MavenExcludeRule {
+class MavenExcludeRule implements Serializable {
     String group
     String artifact
 }
@@ -3,7 +3,7 @@ package org.octopusden.octopus.license.management.plugins.gradle.dto
 import groovy.transform.EqualsAndHashCode
 
 @EqualsAndHashCode
-class MavenGAV {
+class MavenGAV implements Serializable {
     String project
     String configuration
     String group
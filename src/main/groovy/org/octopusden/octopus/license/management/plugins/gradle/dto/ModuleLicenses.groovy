@@ -0,0 +1,13 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto
+
+import groovy.transform.Canonical
+
+/**
+ * Name, URL and licenses of a module read from its POM, the licenses may be inherited from a parent POM.
+ */
+@Canonical
+class ModuleLicenses implements Serializable {
+    String name
+    String url
+    List<PomLicense> licenses = []
+}
@@ -0,0 +1,12 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto
+
+import groovy.transform.Canonical
+
+/**
+ * License declared in the {@code licenses} element of a POM.
+ */
+@Canonical
+class PomLicense implements Serializable {
+    String name
+    String url
+}
@@ -0,0 +1,62 @@
+package org.octopusden.octopus.license.management.plugins.gradle.services
+
+import org.gradle.api.Project
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import org.octopusden.octopus.license.management.plugins.gradle.LicenseGradlePlugin
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryClient
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryMirror
+
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Build-scoped access to license registries.
+ * Every registry is read from a persistent copy in the Gradle user home which is refreshed at most once per build and URL.
+ */
+abstract class LicenseRegistryService implements BuildService<Params>, AutoCloseable {
+    public static final String NAME = "licenseRegistry"
+    public static final String CACHE_DIRECTORY = "caches/octopus-license-registry"
+
+    interface Params extends BuildServiceParameters {
+        DirectoryProperty getCacheDirectory()
+
+        Property<Long> getRefreshInterval()
+
+        Property<Boolean> getOffline()
+
+        Property<Boolean> getPartial()
+    }
+
+    private final Map<String, LicenseRegistryClient> clients = new ConcurrentHashMap<>()
+
+    static Provider<LicenseRegistryService> register(Project project) {
+        return project.gradle.sharedServices.registerIfAbsent(NAME, LicenseRegistryService) {
+            it.parameters.cacheDirectory.set(new File(project.gradle.gradleUserHomeDir, CACHE_DIRECTORY))
+            it.parameters.refreshInterval.set(LicenseGradlePlugin.getLicenseRegistryRefreshInterval(project))
+            it.parameters.offline.set(project.gradle.startParameter.offline)
+            it.parameters.partial.set(LicenseGradlePlugin.isLicenseRegistryPartialFetch(project))
+        }
+    }
+
+    LicenseRegistryClient getClient(String vcsUrl) {
+        return clients.computeIfAbsent(vcsUrl) {
+            new LicenseRegistryClient(new LicenseRegistryMirror(
+                    parameters.cacheDirectory.get().asFile,
+                    it,
+                    Duration.ofMinutes(parameters.refreshInterval.get()),
+                    parameters.offline.get(),
+                    parameters.partial.get()
+            ))
+        }
+    }
+
+    @Override
+    void close() {
+        clients.values().each { it.close() }
+        clients.clear()
+    }
+}
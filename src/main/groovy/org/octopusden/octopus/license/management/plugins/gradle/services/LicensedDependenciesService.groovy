@@ -0,0 +1,56 @@
+package org.octopusden.octopus.license.management.plugins.gradle.services
+
+import org.gradle.api.Project
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import org.gradle.util.GradleVersion
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Build-scoped store of the dependencies collected for every project.
+ * The dependencies of a project are resolved once per build by its collecting task, kept here
+ * and shared by all aggregate and per-module analyzing tasks, so every collected file is read at most once per build.
+ * The stored records must not be modified.
+ */
+abstract class LicensedDependenciesService implements BuildService<BuildServiceParameters.None> {
+    public static final String NAME = "licensedDependencies"
+
+    private final Map<String, List<CanonicalGAV>> collectedDependencies = new ConcurrentHashMap<>()
+
+    /**
+     * @return the service or {@code null} if build services are not supported by Gradle
+     */
+    static Provider<LicensedDependenciesService> register(Project project) {
+        if (GradleVersion.current() < GradleVersion.version('6.1')) {
+            return null
+        }
+        return project.gradle.sharedServices.registerIfAbsent(NAME, LicensedDependenciesService) {}
+    }
+
+    /**
+     * Keeps the dependencies just written to {@code file} by a collecting task.
+     */
+    void store(File file, List<CanonicalGAV> dependencies) {
+        collectedDependencies.put(file.canonicalPath, Collections.unmodifiableList(dependencies))
+    }
+
+    /**
+     * @return dependencies collected into {@code file}
+     */
+    List<CanonicalGAV> getCollectedDependencies(File file) {
+        return collectedDependencies.computeIfAbsent(file.canonicalPath) { readCollectedDependencies(file) }
+    }
+
+    static List<CanonicalGAV> readCollectedDependencies(File file) {
+        if (!file.exists()) {
+            return Collections.emptyList()
+        }
+        List<CanonicalGAV> dependencies = new ArrayList<>()
+        DependenciesJson.read(file, true) { CanonicalGAV gav -> dependencies.add(gav) }
+        return Collections.unmodifiableList(dependencies)
+    }
+}
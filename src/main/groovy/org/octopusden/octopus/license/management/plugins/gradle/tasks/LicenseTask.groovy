@@ -1,47 +1,341 @@
 package org.octopusden.octopus.license.management.plugins.gradle.tasks
 
-import org.octopusden.octopus.license.management.plugins.gradle.dto.ArtifactGAV
-import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule
-import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenGAV
+import org.octopusden.octopus.license.management.plugins.gradle.LicenseGradlePlugin
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyGraph
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ModuleLicenses
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson
+import org.octopusden.octopus.license.management.plugins.gradle.services.LicenseRegistryService
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesSnapshot
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseChecks
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryClient
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryIndex
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseResultCache
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter
 import org.octopusden.octopus.license.management.plugins.gradle.utils.MavenParametersUtils
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicenseResolver
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicensesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.SpillingDependencySet
+import org.octopusden.octopus.license.management.plugins.gradle.utils.TransitiveDependenciesJson
 import org.octopusden.octopus.components.registry.client.impl.ClassicComponentsRegistryServiceClient
 import org.octopusden.octopus.components.registry.client.impl.ClassicComponentsRegistryServiceClientUrlProvider
 
 import com.platformlib.process.local.factory.LocalProcessBuilderFactory
-import groovy.json.JsonSlurper
 import groovy.xml.MarkupBuilder
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleException
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
 import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
 import org.gradle.api.tasks.TaskAction
+import org.gradle.util.GradleVersion
+import org.gradle.workers.WorkerExecutionException
+import org.gradle.workers.WorkerExecutor
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import javax.inject.Inject
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.regex.Pattern
 
-class LicenseTask extends DefaultTask {
+abstract class LicenseTask extends DefaultTask {
     private static final Logger LOGGER = LoggerFactory.getLogger(LicenseTask.class)
 
     public static final String SUPPORTED_GROUPS = "supported-groups"
     public static final String CRS_URL = "component-registry-service-url"
 
-    @Input
+    private static final GradleVersion BUILD_SERVICES_SUPPORTED = GradleVersion.version("6.1")
+
+    /**
+     * See {@link #getSourceDependenciesFile()}.
+     */
+    @Internal
     String sourceDependencies = "build/dependencies.json"
 
+    /**
+     * Directory of the licenses POM, the Maven log and the generated licenses.
+     */
+    @Input
+    String destinationDir = "build"
+
+    /**
+     * See {@link #getSourceDependenciesSnapshotFile()}.
+     */
+    @Internal
+    String sourceDependenciesSnapshot = "build/dependencies.bin"
+
+    /**
+     * Whether the dependencies are read from {@link #sourceDependenciesSnapshot} when it exists,
+     * {@link #sourceDependencies} stays the human-readable export.
+     */
+    @Input
+    boolean dependenciesSnapshot = LicenseGradlePlugin.isDependenciesSnapshotEnabled(project)
+
+    /**
+     * See {@link LicensedDependenciesAnalyzingTask#dependenciesSpillThreshold}.
+     */
+    @Input
+    @Optional
+    Integer dependenciesSpillThreshold = LicenseGradlePlugin.getDependenciesSpillThreshold(project)
+
+    /**
+     * See {@link #getSourcePomLicensesFile()}.
+     */
+    @Internal
+    String sourcePomLicenses = "build/pom-licenses.json"
+
+    /**
+     * See {@link #getSourceTransitiveDependenciesFile()}.
+     */
+    @Internal
+    String sourceTransitiveDependencies = "build/transitive-dependencies.json"
+
+    /**
+     * Whether the licenses of dependencies are taken from {@link #sourcePomLicenses} read from the POMs resolved by Gradle,
+     * Maven is run for the dependencies whose transitive dependencies or license texts are not found there only.
+     */
+    @Input
+    boolean gradlePomResolution = LicenseGradlePlugin.isGradlePomResolution(project)
+
+    /**
+     * Whether the license results of the dependencies are taken from {@link #licenseResultCacheDirectory},
+     * Maven is not run if the results of the same dependencies are stored.
+     */
+    @Input
+    boolean licenseResultCache = LicenseGradlePlugin.isLicenseResultCacheEnabled(project)
+
+    /**
+     * Whether the dependencies of all projects of the build are processed by one task, so several versions of a dependency
+     * are listed by separate POMs and Maven is run once per version, see {@link #eachWithLayer}.
+     */
+    @Input
+    boolean aggregatedMavenRun = false
+
+    @Internal
+    File licenseResultCacheDirectory = new File(project.gradle.gradleUserHomeDir, LicenseResultCache.CACHE_DIRECTORY)
+
+    @Internal
+    final String licenseRegistryGitRepository = LicenseGradlePlugin.getLicenseRegistryGitRepository(project)
+
+    @Internal
+    final String licenseWhitelistFile = LicenseGradlePlugin.getLicenseWhitelistParameter(project)
+
+    /**
+     * License registry the licenses not resolved by Maven are checked against if {@code license.failOnBlacklist} is set
+     * and the texts of the licenses read from POMs are taken from,
+     * {@code null} if no registry is set or the Gradle version does not support build services.
+     */
+    @Internal
+    final Provider<LicenseRegistryService> licenseRegistryService =
+            licenseRegistryGitRepository && GradleVersion.current() >= BUILD_SERVICES_SUPPORTED ?
+                    LicenseRegistryService.register(project) : null
+
+    @Input
+    @Optional
+    final Property<String> supportedGroupsProperty = project.objects.property(String)
+            .convention(project.provider { project.findProperty(SUPPORTED_GROUPS)?.toString() })
+
+    @Input
+    @Optional
+    final Property<String> componentsRegistryUrl = project.objects.property(String)
+            .convention(project.provider { project.findProperty(CRS_URL)?.toString() })
+
+    @Input
+    final Property<Boolean> excludeIbmGroups = project.objects.property(Boolean)
+            .convention(project.provider { project.rootProject.hasProperty("excludeIbmGroups") })
+
+    @Input
+    @Optional
+    final Property<String> octopusLicenseMavenPluginVersion = project.objects.property(String)
+            .convention(project.provider {
+                (MavenParametersUtils.getLicenseParametersProperty(project, "octopus-license-maven-plugin.version")
+                        ?: project.findProperty("octopus-license-maven-plugin.version"))?.toString()
+            })
+
+    @Input
+    @Optional
+    final Property<String> mavenLicenseParameters = project.objects.property(String)
+            .convention(project.provider { project.findProperty(MavenParametersUtils.MAVEN_LICENSE_PARAMETERS)?.toString() })
+
+    @Input
+    final Property<String> projectGroup = project.objects.property(String)
+            .convention(project.provider { project.group.toString() })
+
+    @Input
+    final Property<String> projectName = project.objects.property(String).convention(project.name)
+
+    @Input
+    final Property<String> projectVersion = project.objects.property(String)
+            .convention(project.provider { project.version.toString() })
+
+    private final File projectDirectory = project.projectDir
+
+    /**
+     * Whether Maven is run through the Maven embedder in a Gradle worker process instead of a forked {@code mvn}.
+     */
+    @Internal
+    final boolean embeddedMaven = LicenseGradlePlugin.isEmbeddedMavenExecution(project)
+
+    /**
+     * Whether Maven is run through the maven daemon {@code mvnd}, the daemon is started once and kept warm by {@code mvnd}.
+     */
+    @Internal
+    final boolean mavenDaemon = LicenseGradlePlugin.isMavenDaemonExecution(project)
+
+    @Internal
+    LicenseRegistryClient getLicenseRegistry() {
+        return licenseRegistryService?.get()?.getClient(licenseRegistryGitRepository)
+    }
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor()
+
+    private final boolean offline = project.gradle.startParameter.offline
+
+    /**
+     * Dependencies list, see {@link LicensedDependenciesAnalyzingTask#getDependenciesListFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourceDependenciesFile() {
+        return findFile(sourceDependencies)
+    }
+
+    /**
+     * See {@link LicensedDependenciesAnalyzingTask#getDependenciesSnapshotFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourceDependenciesSnapshotFile() {
+        return dependenciesSnapshot ? findFile(sourceDependenciesSnapshot) : null
+    }
+
+    /**
+     * Licenses read from the POMs of the dependencies, see {@link LicensedDependenciesAnalyzingTask#getPomLicensesFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourcePomLicensesFile() {
+        return gradlePomResolution ? findFile(sourcePomLicenses) : null
+    }
+
+    /**
+     * Resolved dependency graph of the dependencies, see {@link LicensedDependenciesAnalyzingTask#getTransitiveDependenciesFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourceTransitiveDependenciesFile() {
+        return gradlePomResolution || licenseResultCache ? findFile(sourceTransitiveDependencies) : null
+    }
+
     @OutputDirectory
     File getLicensesDirectory() {
-        return project.file("build/licenses")
+        return resolveFile("$destinationDir/licenses")
     }
 
     LicenseTask() {
-        outputs.dir(licensesDirectory)
+        outputs.dir { licensesDirectory }
+        if (licenseRegistryService != null) {
+            usesService(licenseRegistryService)
+        }
+    }
+
+    /**
+     * Runs Maven through the Maven embedder of the Maven installation in a Gradle worker process,
+     * the worker process is reused by the following license tasks of the build and by the following builds.
+     *
+     * @return Maven exit code or {@code null} if Maven can not be run embedded, so it has to be forked
+     */
+    protected Integer executeEmbeddedMaven(String mavenHome, File logFile, List<String> arguments) {
+        def home = findMavenHome(mavenHome)
+        if (home == null) {
+            LOGGER.warn("Maven installation is not found, fork mvn")
+            return null
+        }
+        // The classpath of the Maven launcher, see bin/m2.conf of the installation
+        def classpath = ["boot", "lib"].collectMany { String dir ->
+            (new File(home, dir).listFiles()?.findAll { it.name.endsWith(".jar") }?.sort() ?: []) as List<File>
+        } + [new File(home, "conf/logging")]
+        def exitCodeFile = new File(temporaryDir, "maven-exit-code")
+        exitCodeFile.delete()
+        def workingDirectory = projectDirectory
+        try {
+            def workQueue = workerExecutor.processIsolation {}
+            workQueue.submit(EmbeddedMavenWorkAction) { EmbeddedMavenWorkAction.Parameters parameters ->
+                parameters.mavenHome.set(home)
+                parameters.mavenClasspath.from(classpath)
+                parameters.workingDirectory.set(workingDirectory)
+                parameters.arguments.set(arguments)
+                parameters.logFile.set(logFile)
+                parameters.exitCodeFile.set(exitCodeFile)
+            }
+            workQueue.await()
+        } catch (WorkerExecutionException e) {
+            LOGGER.warn("Fail to run embedded maven of $home, fork mvn", e)
+            return null
+        }
+        return Integer.valueOf(exitCodeFile.text.trim())
+    }
+
+    /**
+     * @return Maven installation directory, the installation of {@code mvn} found on {@code PATH} if {@code mavenHome} is not set
+     */
+    static File findMavenHome(String mavenHome) {
+        if (mavenHome != null) {
+            return new File(mavenHome)
+        }
+        return findOnPath("mvn", "mvn.cmd")?.toPath()?.toRealPath()?.parent?.parent?.toFile()
     }
 
-    private final String getSupportedGroups(project) {
+    /**
+     * @return {@code mvnd} command of {@code MVND_HOME} or found on {@code PATH}, {@code null} if the maven daemon is not installed
+     */
+    static String findMavenDaemonCommand() {
+        def mavenDaemonHome = System.getProperty("MVND_HOME", System.getenv("MVND_HOME"))
+        if (mavenDaemonHome != null) {
+            return "$mavenDaemonHome/bin/mvnd"
+        }
+        def mavenDaemon = findOnPath("mvnd", "mvnd.cmd")
+        if (mavenDaemon != null) {
+            return mavenDaemon.absolutePath
+        }
+        LOGGER.warn("Maven daemon is not found, fork mvn")
+        return null
+    }
+
+    private static File findOnPath(String... names) {
+        return System.getenv("PATH")?.split(File.pathSeparator)?.findResult { String dir ->
+            names.collect { new File(dir, it) }.find { it.isFile() }
+        }
+    }
+
+    protected File resolveFile(String path) {
+        File file = new File(path)
+        return file.absolute ? file : new File(projectDirectory, path)
+    }
+
+    /**
+     * @return the file of the path, {@code null} if it does not exist as the dependencies have not been analyzed
+     */
+    protected File findFile(String path) {
+        File file = resolveFile(path)
+        return file.exists() ? file : null
+    }
+
+    protected final String resolveSupportedGroups() {
         def supportedGroups = ""
-        def hasSupportedGroups = project.hasProperty(SUPPORTED_GROUPS)
-        def hasCrsUrl = project.hasProperty(CRS_URL)
+        def hasSupportedGroups = supportedGroupsProperty.isPresent()
+        def hasCrsUrl = componentsRegistryUrl.isPresent()
 
         if (hasSupportedGroups && hasCrsUrl) {
             throw new IllegalArgumentException("Can only 1 property exist: either $SUPPORTED_GROUPS or $CRS_URL, not both.")
@@ -51,13 +345,13 @@ class LicenseTask extends DefaultTask {
         }
 
         if (hasSupportedGroups) {
-            def supportedGroupsString = project.property(SUPPORTED_GROUPS) as String
+            def supportedGroupsString = supportedGroupsProperty.get()
             LOGGER.info("Supported groups from property: ${supportedGroupsString}")
             supportedGroups = supportedGroupsString.split(",").collect { it.trim() }.join('|')
         }
 
         if (hasCrsUrl) {
-            def componentsRegistryApiUrl = project.findProperty(CRS_URL).toString()
+            def componentsRegistryApiUrl = componentsRegistryUrl.get()
             def componentsRegistryServiceClient = new ClassicComponentsRegistryServiceClient(
                     new ClassicComponentsRegistryServiceClientUrlProvider() {
                         @Override
@@ -81,43 +375,259 @@ class LicenseTask extends DefaultTask {
 
     @TaskAction
     void processLicenses() {
-        if (project.gradle.startParameter.offline) {
+        if (offline) {
             LOGGER.info("Skip generating licenses because of offline mode")
             return
         }
 
-        def mavenExcludedGroups = getSupportedGroups(project)
-        if (project.rootProject.hasProperty("excludeIbmGroups")) {
+        def mavenExcludedGroups = resolveSupportedGroups()
+        if (excludeIbmGroups.get()) {
             mavenExcludedGroups += (mavenExcludedGroups ? '|' : '') + 'com.ibm.mq|com.ibm'
         }
 
-        def licensesPom = project.file("build/licenses-pom.xml")
-        Set<MavenGAV> loadedResolvedArtifacts = new JsonSlurper().parse(project.file(sourceDependencies))
-        def resolvedArtifacts = loadedResolvedArtifacts.collect {
-            new ArtifactGAV(
-                    it.group,
-                    it.artifact,
-                    it.version,
-                    it.classifier,
-                    it.extension,
-                    it.excludeRules?.collect { new MavenExcludeRule(it.group, it.artifact) }
-            )
-        }.toSet()
+        // Distinct dependencies in the order of the list, or sorted by coordinates if spilled, the usages are not read
+        def spillThreshold = dependenciesSpillThreshold
+        def dependencyGraph = spillThreshold == null ? new DependencyGraph() : null
+        def spilledArtifacts = spillThreshold == null ? null : new SpillingDependencySet(temporaryDir, spillThreshold)
+        def addArtifact = { CanonicalGAV gav ->
+            if (spilledArtifacts != null) {
+                spilledArtifacts.add(gav)
+            } else {
+                dependencyGraph.add(gav.group, gav.artifact, gav.version, gav.classifier, gav.extension, gav.excludeRules)
+            }
+        }
+        def snapshotFile = resolveFile(sourceDependenciesSnapshot)
+        if (dependenciesSnapshot && snapshotFile.exists()) {
+            LOGGER.info("Read dependencies from snapshot {}", snapshotFile)
+            DependenciesSnapshot.open(snapshotFile).forEach(false, addArtifact)
+        } else {
+            DependenciesJson.read(resolveFile(sourceDependencies), false, addArtifact)
+        }
+        Iterable<?> resolvedArtifacts = spilledArtifacts != null ? spilledArtifacts : dependencyGraph.artifacts
 
-        def octopusLicenseMavenPluginVersion = MavenParametersUtils.getLicenseParametersProperty(project, "octopus-license-maven-plugin.version")
-                ?: project.findProperty("octopus-license-maven-plugin.version")
+        def octopusLicenseMavenPluginVersion = this.octopusLicenseMavenPluginVersion.getOrNull()
 
         if (!octopusLicenseMavenPluginVersion) {
             throw new IllegalArgumentException("Property 'octopus-license-maven-plugin.version' must be specified")
         }
 
-        licensesPom.withWriter { writer ->
+        def mavenParameters = mavenLicenseParameters.getOrNull()
+        def failOnMissing = "true".equalsIgnoreCase(
+                MavenParametersUtils.getLicenseParametersProperty(mavenParameters, "license.failOnMissing"))
+        def failOnBlacklist = "true".equalsIgnoreCase(
+                MavenParametersUtils.getLicenseParametersProperty(mavenParameters, "license.failOnBlacklist"))
+        def resultCache = licenseResultCache ? new LicenseResultCache(licenseResultCacheDirectory,
+                [octopusLicenseMavenPluginVersion, mavenExcludedGroups, mavenParameters, gradlePomResolution].join("\n")) : null
+        def cachedLicensesDirectory = new File(temporaryDir, "cached-licenses")
+        def missingResults = new LinkedHashMap<String, String>()
+        if (resultCache != null) {
+            def cachedResults = new ArrayList<File>()
+            def dependencyCount = 0
+            def reuse = !failOnBlacklist || licenseRegistryService != null
+            new File(temporaryDir, "cached-results").deleteDir()
+            // Only the dependencies with no kept results are passed to Maven
+            resolvedArtifacts = resolvedArtifacts.findAll {
+                def key = resultCache.getKey(getDescriptor(it))
+                dependencyCount++
+                if (reuse && resultCache.contains(key)) {
+                    def cachedResult = new File(temporaryDir, "cached-results/${cachedResults.size()}")
+                    resultCache.write(key, cachedResult)
+                    cachedResults.add(cachedResult)
+                    return false
+                }
+                missingResults.put(key, LicensesOutputSplitter.getKey(it.group, it.artifact, it.version))
+                return true
+            }
+            if (!reuse) {
+                LOGGER.info("License results of the dependencies are not taken from {}, as the license registry to check them is not set",
+                        licenseResultCacheDirectory)
+            } else {
+                LOGGER.info("License results of {} of {} dependencies are found in {}", cachedResults.size(), dependencyCount,
+                        licenseResultCacheDirectory)
+            }
+            cachedLicensesDirectory.deleteDir()
+            LicensesOutputSplitter.merge(cachedResults, cachedLicensesDirectory)
+            new File(temporaryDir, "cached-results").deleteDir()
+            if (!cachedResults.isEmpty()) {
+                checkLicenses(LicenseChecks.readLicenses(new File(cachedLicensesDirectory, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()),
+                        failOnMissing, failOnBlacklist)
+            }
+        }
+        def nativeLicenses = new LinkedHashMap<String, ModuleLicenses>()
+        def runMaven = resultCache == null || !missingResults.isEmpty()
+        if (!runMaven) {
+            LOGGER.info("Licenses of dependencies are not resolved, as the license results of all dependencies are found")
+        } else if (gradlePomResolution && licenseRegistryService == null) {
+            LOGGER.info("Licenses of dependencies are resolved by Maven, " +
+                    "as the license registry to take the license texts from is not set")
+        } else if (gradlePomResolution) {
+            def pomLicenses = PomLicensesJson.read(resolveFile(sourcePomLicenses))
+            def graph = TransitiveDependenciesJson.read(resolveFile(sourceTransitiveDependencies))
+            def index = licenseRegistry.getIndex(licenseWhitelistFile)
+            def mavenKeys = PomLicenseResolver.select(resolvedArtifacts.collect {
+                LicensesOutputSplitter.getKey(it.group, it.artifact, it.version)
+            }, pomLicenses, graph, Pattern.compile(mavenExcludedGroups), { String license ->
+                PomLicenseResolver.getLicenseFile(index, license) != null
+            }, nativeLicenses)
+            nativeLicenses = PomLicenseResolver.toCanonicalNames(nativeLicenses, index)
+            LOGGER.info("Licenses of {} modules are read from POMs, licenses of {} dependencies are resolved by Maven",
+                    nativeLicenses.size(), mavenKeys.size())
+            resolvedArtifacts = resolvedArtifacts.findAll {
+                mavenKeys.contains(LicensesOutputSplitter.getKey(it.group, it.artifact, it.version))
+            }
+            runMaven = !mavenKeys.empty
+        }
+
+        if (runMaven) {
+            try {
+                def layers = aggregatedMavenRun ? getLayerCount(resolvedArtifacts, spilledArtifacts != null) : 1
+                if (layers > 1) {
+                    LOGGER.info("Dependencies are listed by {} POMs, as several versions of some dependencies are used", layers)
+                }
+                for (int layer = 0; layer < layers; layer++) {
+                    def suffix = layer == 0 ? "" : "-${layer + 1}"
+                    def pom = resolveFile("$destinationDir/licenses-pom${suffix}.xml")
+                    def outputDirectory = layer == 0 ? licensesDirectory : new File(temporaryDir, "licenses${suffix}")
+                    if (layer > 0) {
+                        outputDirectory.deleteDir()
+                    }
+                    writeLicensesPom(pom, octopusLicenseMavenPluginVersion, mavenExcludedGroups, resolvedArtifacts, layer,
+                            spilledArtifacts != null)
+                    executeMaven(pom, outputDirectory, suffix)
+                    if (layer > 0) {
+                        LicensesOutputSplitter.merge(outputDirectory, licensesDirectory)
+                    }
+                }
+            } finally {
+                spilledArtifacts?.close()
+            }
+        } else {
+            spilledArtifacts?.close()
+            // The licenses of the previous run are removed, the licenses read from POMs are written to the directory
+            licensesDirectory.deleteDir()
+            licensesDirectory.mkdirs()
+        }
+        if (!nativeLicenses.isEmpty()) {
+            checkLicenses(nativeLicenses.collectEntries { String key, ModuleLicenses module ->
+                [(key): module.licenses*.name]
+            } as Map<String, List<String>>, failOnMissing, failOnBlacklist)
+            def registry = licenseRegistry
+            PomLicenseResolver.writeLicenses(licensesDirectory, nativeLicenses, PomLicenseResolver.writeLicenseTexts(
+                    licensesDirectory, nativeLicenses, registry, registry.getIndex(licenseWhitelistFile)))
+        }
+        if (resultCache != null) {
+            storeResults(resultCache, missingResults)
+            LicensesOutputSplitter.merge([cachedLicensesDirectory], licensesDirectory)
+            cachedLicensesDirectory.deleteDir()
+        }
+    }
+
+    /**
+     * Stores the part of the licenses directory for every dependency Maven has been run for and its transitive dependencies.
+     *
+     * @param results keys of the dependencies by the keys of their license results
+     */
+    protected void storeResults(LicenseResultCache resultCache, Map<String, String> results) {
+        if (results.isEmpty()) {
+            return
+        }
+        def graph = TransitiveDependenciesJson.read(resolveFile(sourceTransitiveDependencies))
+        def versions = LicensesOutputSplitter.getVersions(licensesDirectory)
+        def resultsDirectory = new File(temporaryDir, "results")
+        def parts = new LinkedHashMap<File, Set<String>>()
+        results.eachWithIndex { String key, String dependency, int index ->
+            def transitiveDependencies = TransitiveDependenciesJson.closure(graph, [dependency])
+            transitiveDependencies.remove(dependency)
+            parts.put(new File(resultsDirectory, String.valueOf(index)),
+                    LicensesOutputSplitter.selectDependencies(versions, [dependency] as Set<String>, transitiveDependencies))
+        }
+        resultsDirectory.deleteDir()
+        LicensesOutputSplitter.split(licensesDirectory, parts)
+        results.keySet().eachWithIndex { String key, int index ->
+            resultCache.store(key, new File(resultsDirectory, String.valueOf(index)))
+        }
+        resultsDirectory.deleteDir()
+        LOGGER.info("License results of {} dependencies are stored in {}", results.size(), licenseResultCacheDirectory)
+    }
+
+    /**
+     * @param artifact see {@link DependencyGraph#getArtifacts()} and {@link SpillingDependencySet}
+     */
+    protected static String getDescriptor(artifact) {
+        return "${artifact.group}:${artifact.artifact}:${artifact.version}:${artifact.classifier}:${artifact.extension}" +
+                (artifact.excludeRules ?: []).collect { rule -> " -${rule.group}:${rule.artifact}" }.join("")
+    }
+
+    /**
+     * Applies the {@code failOnMissing} and {@code failOnBlacklist} checks of the license Maven plugin
+     * to the licenses not resolved by a Maven run.
+     *
+     * @param licenses licenses of the dependencies, see {@link LicenseChecks#readLicenses}
+     */
+    protected void checkLicenses(Map<String, List<String>> licenses, boolean failOnMissing, boolean failOnBlacklist) {
+        if (failOnMissing) {
+            def missing = LicenseChecks.findMissing(licenses)
+            if (!missing.empty) {
+                throw new GradleException("There are ${missing.size()} dependencies with no license:\n\t" + missing.join("\n\t"))
+            }
+        }
+        if (failOnBlacklist) {
+            def index = licenseRegistry.getIndex(licenseWhitelistFile)
+            def blacklisted = LicenseChecks.findBlacklisted(licenses, index)
+            if (!blacklisted.isEmpty()) {
+                throw new GradleException(blacklisted.collect { String license, List<String> dependencies ->
+                    "License \"$license\" used by ${dependencies.size()} dependencies:\n\t" + dependencies.join("\n\t")
+                }.join("\n"))
+            }
+        }
+    }
+
+
+    /**
+     * A POM keeps one version of the dependencies with the same group, artifact, classifier and type,
+     * so the dependencies are split into layers listed by separate POMs: the n-th version of such a dependency goes to the n-th layer.
+     *
+     * @param sorted whether the dependencies are sorted by coordinates, so the versions of a module are adjacent
+     * @param action called with every dependency and its layer
+     */
+    protected static void eachWithLayer(Iterable<?> artifacts, boolean sorted, Closure action) {
+        def versions = new HashMap<String, Integer>()
+        String module = null
+        artifacts.each { artifact ->
+            if (sorted && module != "${artifact.group}:${artifact.artifact}".toString()) {
+                versions.clear()
+                module = "${artifact.group}:${artifact.artifact}".toString()
+            }
+            def key = "${artifact.group}:${artifact.artifact}:${artifact.classifier}:${artifact.extension}".toString()
+            int layer = versions.getOrDefault(key, 0)
+            versions.put(key, layer + 1)
+            action(artifact, layer)
+        }
+    }
+
+    protected static int getLayerCount(Iterable<?> artifacts, boolean sorted) {
+        int count = 0
+        eachWithLayer(artifacts, sorted) { artifact, int layer -> count = Math.max(count, layer + 1) }
+        return count
+    }
+
+    protected static void forEachInLayer(Iterable<?> artifacts, int layer, boolean sorted, Closure action) {
+        eachWithLayer(artifacts, sorted) { artifact, int artifactLayer ->
+            if (artifactLayer == layer) {
+                action(artifact)
+            }
+        }
+    }
+
+    protected void writeLicensesPom(File pom, String octopusLicenseMavenPluginVersion, String mavenExcludedGroups,
+                                    Iterable<?> artifacts, int layer, boolean sorted) {
+        pom.withWriter { writer ->
             def markupBuilder = new MarkupBuilder(writer)
             markupBuilder.project {
                 modelVersion("4.0.0")
-                groupId(project.group)
-                artifactId(project.name)
-                version(project.version)
+                groupId(projectGroup.get())
+                artifactId(projectName.get())
+                version(projectVersion.get())
                 markupBuilder.build {
                     plugins {
                         plugin {
@@ -151,7 +661,7 @@ class LicenseTask extends DefaultTask {
                     }
                 }
                 markupBuilder.dependencies {
-                    resolvedArtifacts.forEach { artifactGAV ->
+                    def writeDependency = { artifactGAV ->
                         dependency {
                             groupId(artifactGAV.group)
                             artifactId(artifactGAV.artifact)
@@ -174,60 +684,86 @@ class LicenseTask extends DefaultTask {
                             }
                         }
                     }
+                    if (aggregatedMavenRun) {
+                        forEachInLayer(artifacts, layer, sorted, writeDependency)
+                    } else {
+                        artifacts.each(writeDependency)
+                    }
                 }
 
             }
-            def output = new CopyOnWriteArrayList<String>()
-            def mavenHome = System.getProperty("MAVEN_HOME", System.getenv("MAVEN_HOME"))
-            def command
-            if (mavenHome == null) {
-                command = "mvn"
-            } else {
-                command = "$mavenHome/bin/mvn"
-            }
+            writer.flush()
+        }
+    }
 
-            def licenseArgs
-            def mavenParameters = project.findProperty(MavenParametersUtils.MAVEN_LICENSE_PARAMETERS)
-            if (mavenParameters == null) {
-                throw new IllegalArgumentException("Property '${MavenParametersUtils.MAVEN_LICENSE_PARAMETERS}' must be specified")
-            }
-            LOGGER.info("Maven license parameters: $mavenParameters")
-            licenseArgs = mavenParameters
-                    .toString()
-                    .replaceAll(/^['"]|['"]$/, '')
-                    .plus(" -Dlicense.output.directory=${licensesDirectory.toPath().toAbsolutePath().normalize()}")
-                    .split(" ")
-            def processInstance = LocalProcessBuilderFactory.newLocalProcessBuilder()
-                    .command(command)
-                    .mapBatExtension()
-                    .mapCmdExtension()
-                    .mapBashExtension()
-                    .mapShExtension()
-                    .envVariables(Collections.singletonMap("JAVA_HOME", System.getProperty("java.home")))
-                    .logger { it.logger(LOGGER) }
-                    .stdOutConsumer { out ->
-                        output.add(out)
-                    }.stdErrConsumer { err ->
-                output.add(err)
-            }.processInstance {
-                it.headLimit(5)
-                it.tailLimit(20)
-            }
-                    .build()
-                    .execute("-f",
-                            licensesPom.toPath().toAbsolutePath().normalize(),
-                            "-B",
-                            *licenseArgs,
-                            "generate-resources").toCompletableFuture().get()
-            def retCode = processInstance.exitCode
-            project.file("build/licenses-mvn.log").text = output.join('\n')
-            if (retCode != 0) {
-                if (!LOGGER.isDebugEnabled()) {
-                    LOGGER.error("License processing output is {}", output.join('\n'))
+    protected void executeMaven(File pom, File outputDirectory, String suffix) {
+        def output = new CopyOnWriteArrayList<String>()
+        def mavenHome = System.getProperty("MAVEN_HOME", System.getenv("MAVEN_HOME"))
+        def command
+        def mavenDaemonCommand = mavenDaemon ? findMavenDaemonCommand() : null
+        if (mavenDaemonCommand != null) {
+            LOGGER.info("Run maven through the maven daemon {}", mavenDaemonCommand)
+            command = mavenDaemonCommand
+        } else if (mavenHome == null) {
+            command = "mvn"
+        } else {
+            command = "$mavenHome/bin/mvn"
+        }
+
+        def licenseArgs
+        def mavenParameters = mavenLicenseParameters.getOrNull()
+        if (mavenParameters == null) {
+            throw new IllegalArgumentException("Property '${MavenParametersUtils.MAVEN_LICENSE_PARAMETERS}' must be specified")
+        }
+        LOGGER.info("Maven license parameters: $mavenParameters")
+        licenseArgs = mavenParameters
+                .toString()
+                .replaceAll(/^['"]|['"]$/, '')
+                .plus(" -Dlicense.output.directory=${outputDirectory.toPath().toAbsolutePath().normalize()}")
+                .split(" ")
+        if (embeddedMaven) {
+            def logFile = resolveFile("$destinationDir/licenses-mvn${suffix}.log")
+            def embeddedExitCode = executeEmbeddedMaven(mavenHome, logFile,
+                    ["-f", pom.toPath().toAbsolutePath().normalize().toString(), "-B", *licenseArgs, "generate-resources"])
+            if (embeddedExitCode != null) {
+                if (embeddedExitCode != 0) {
+                    if (!LOGGER.isDebugEnabled()) {
+                        LOGGER.error("License processing output is {}", logFile.text)
+                    }
+                    throw new GradleException("Fail to execute embedded maven $embeddedExitCode, see $logFile")
                 }
-                throw new GradleException("Fail to execute maven command $retCode:\n\t" + String.join('\n\t', processInstance.stdErr))
+                return
             }
         }
+        def processInstance = LocalProcessBuilderFactory.newLocalProcessBuilder()
+                .command(command)
+                .mapBatExtension()
+                .mapCmdExtension()
+                .mapBashExtension()
+                .mapShExtension()
+                .envVariables(Collections.singletonMap("JAVA_HOME", System.getProperty("java.home")))
+                .logger { it.logger(LOGGER) }
+                .stdOutConsumer { out ->
+                    output.add(out)
+                }.stdErrConsumer { err ->
+            output.add(err)
+        }.processInstance {
+            it.headLimit(5)
+            it.tailLimit(20)
+        }
+                .build()
+                .execute("-f",
+                        pom.toPath().toAbsolutePath().normalize(),
+                        "-B",
+                        *licenseArgs,
+                        "generate-resources").toCompletableFuture().get()
+        def retCode = processInstance.exitCode
+        resolveFile("$destinationDir/licenses-mvn${suffix}.log").text = output.join('\n')
+        if (retCode != 0) {
+            if (!LOGGER.isDebugEnabled()) {
+                LOGGER.error("License processing output is {}", output.join('\n'))
+            }
+            throw new GradleException("Fail to execute maven command $retCode:\n\t" + String.join('\n\t', processInstance.stdErr))
+        }
     }
-
 }
@@ -1,22 +1,40 @@
 package org.octopusden.octopus.license.management.plugins.gradle.tasks
 
-import groovy.json.JsonBuilder
-import org.gradle.api.artifacts.ModuleDependency
 import org.gradle.api.DefaultTask
 import org.gradle.api.Project
 import org.gradle.api.artifacts.Configuration
 import org.gradle.api.artifacts.ResolvedArtifact
 import org.gradle.api.artifacts.ResolvedDependency
 import org.gradle.api.artifacts.component.ProjectComponentIdentifier
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.logging.Logger
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
 import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.TaskAction
-import org.gradle.util.GradleVersion
+import org.octopusden.octopus.license.management.plugins.gradle.LicenseGradlePlugin
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyGraph
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage
 import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule
 import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenGAV
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ModuleLicenses
+import org.octopusden.octopus.license.management.plugins.gradle.services.LicensedDependenciesService
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesSnapshot
+import org.octopusden.octopus.license.management.plugins.gradle.utils.ExcludeRulesIndex
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicensesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.SpillingDependencySet
+import org.octopusden.octopus.license.management.plugins.gradle.utils.TransitiveDependenciesJson
 
 /**
  * Create json file with projects dependencies.
+ * Dependencies of every analyzed project are resolved by its {@link LicensedDependenciesCollectingTask} and merged here.
  */
 class LicensedDependenciesAnalyzingTask extends DefaultTask {
 
@@ -31,129 +49,255 @@ class LicensedDependenciesAnalyzingTask extends DefaultTask {
     @Input
     String destinationFile = "dependencies.json"
 
+    @Input
+    String destinationSnapshotFile = "dependencies.bin"
+
+    /**
+     * Whether the dependencies list is written as a {@link DependenciesSnapshot} as well, see {@link LicenseTask#dependenciesSnapshot}.
+     */
+    @Input
+    boolean dependenciesSnapshot = LicenseGradlePlugin.isDependenciesSnapshotEnabled(project)
+
+    /**
+     * Whether the licenses read from the POMs of the dependencies by the collecting tasks are merged into {@link #getPomLicensesFile()}.
+     */
+    @Input
+    boolean gradlePomResolution = LicenseGradlePlugin.isGradlePomResolution(project)
+
+    /**
+     * Whether the dependency graphs resolved by the collecting tasks are merged into {@link #getTransitiveDependenciesFile()}.
+     */
+    @Input
+    boolean transitiveDependencies = LicenseGradlePlugin.isTransitiveDependenciesCollected(project)
+
+    /**
+     * Number of distinct dependencies held in memory before they are spilled to disk and merged with an external sort,
+     * the dependencies list is sorted by coordinates then. The dependencies are merged in memory if not set.
+     */
+    @Input
+    @Optional
+    Integer dependenciesSpillThreshold = LicenseGradlePlugin.getDependenciesSpillThreshold(project)
+
     @Input
     boolean onlyCurrentProject = false
 
+    @Input
+    final Property<String> includePattern = project.objects.property(String)
+            .convention(project.provider { licenseManagementExtension.includePattern ?: DEFAULT_INCLUDE_PATTERN })
+
+    @Input
+    final Property<String> excludePattern = project.objects.property(String)
+            .convention(project.provider { licenseManagementExtension.excludePattern ?: DEFAULT_EXCLUDE_PATTERN })
+
     @OutputFile
     File getDependenciesListFile() {
-        project.file("$destinationDir/$destinationFile")
+        resolveFile("$destinationDir/$destinationFile")
+    }
+
+    @OutputFile
+    @Optional
+    File getDependenciesSnapshotFile() {
+        dependenciesSnapshot ? resolveFile("$destinationDir/$destinationSnapshotFile") : null
+    }
+
+    @OutputFile
+    @Optional
+    File getPomLicensesFile() {
+        gradlePomResolution ? resolveFile("$destinationDir/pom-licenses.json") : null
+    }
+
+    /**
+     * Resolved dependency graph of the dependencies and their transitive dependencies, see {@link TransitiveDependenciesJson}.
+     */
+    @OutputFile
+    @Optional
+    File getTransitiveDependenciesFile() {
+        transitiveDependencies ? resolveFile("$destinationDir/transitive-dependencies.json") : null
     }
 
     @OutputFile
     File getResolvingProblemsFile() {
-        project.file("$destinationDir/resolving_problems.txt")
+        resolveFile("$destinationDir/resolving_problems.txt")
     }
 
+    /**
+     * Dependencies collected from the analyzed projects by {@link LicensedDependenciesCollectingTask}.
+     */
+    @InputFiles
+    final ConfigurableFileCollection collectedDependencies = project.files()
+
+    @InputFiles
+    final ConfigurableFileCollection collectedResolvingProblems = project.files()
+
+    @InputFiles
+    final ConfigurableFileCollection collectedPomLicenses = project.files()
+
+    @InputFiles
+    final ConfigurableFileCollection collectedTransitiveDependencies = project.files()
+
+    @Internal
+    final Provider<LicensedDependenciesService> licensedDependenciesService = LicensedDependenciesService.register(project)
+
+    @Internal
+    final LicenseManagementExtension licenseManagementExtension = project.extensions.getByType(LicenseManagementExtension.class)
+
+    private final File projectDirectory = project.projectDir
+
+    private final boolean offline = project.gradle.startParameter.offline
 
     LicensedDependenciesAnalyzingTask() {
         outputs.file(dependenciesListFile)
+        if (licensedDependenciesService != null) {
+            usesService(licensedDependenciesService)
+        }
+    }
+
+    protected File resolveFile(String path) {
+        File file = new File(path)
+        return file.absolute ? file : new File(projectDirectory, path)
+    }
+
+    boolean isConfigurationAnalyzed(String configurationName) {
+        if (configurationName.endsWith(LicensedDependenciesCollectingTask.LICENSE_PLUGIN_CONFIGURATION_SUFFIX)) {
+            return false
+        }
+        def excludePattern = this.excludePattern.getOrNull()
+        def includePattern = this.includePattern.getOrNull()
+        if (excludePattern != null && configurationName.matches(excludePattern)) {
+            logger.info("Skip '{}' configuration because of exclude pattern '{}'", configurationName, excludePattern)
+            return false
+        }
+        if (includePattern != null && !configurationName.matches(includePattern)) {
+            logger.info("Skip '{}' configuration because of include pattern '{}'", configurationName, includePattern)
+            return false
+        }
+        return true
+    }
+
+    /**
+     * Resolves dependencies of the project configurations through the collecting task of the project.
+     */
+    void analyze(Project projectToAnalyze) {
+        def collector = LicensedDependenciesCollectingTask.register(projectToAnalyze)
+        def task = this
+        def taskGraph = project.gradle.taskGraph
+        def configurationNames = project.provider {
+            taskGraph.hasTask(task) ? projectToAnalyze.configurations.names.findAll { task.isConfigurationAnalyzed(it) } : []
+        }
+        collector.configure { it.configurationNames.addAll(configurationNames) }
+        collectedDependencies.from(collector.map { it.dependenciesListFile })
+        collectedResolvingProblems.from(collector.map { it.resolvingProblemsFile })
+        if (gradlePomResolution) {
+            collectedPomLicenses.from(collector.map { it.pomLicensesFile })
+        }
+        if (transitiveDependencies) {
+            collectedTransitiveDependencies.from(collector.map { it.transitiveDependenciesFile })
+        }
+        dependsOn(collector)
     }
 
-    @SuppressWarnings('ConfigurationAvoidance')
     @TaskAction
     def processLicensedDependencies() {
-        if (project.gradle.startParameter.offline) {
+        if (offline) {
             logger.info("Skip extracting licenses for dependencies because of offline mode")
             return
         }
 
-        final LicenseManagementExtension licenseManagementExtension = getProject()
-                .getProject()
-                .getExtensions()
-                .getByType(LicenseManagementExtension.class)
-
-        def includePattern = licenseManagementExtension.includePattern ?: DEFAULT_INCLUDE_PATTERN
-        def excludePattern = licenseManagementExtension.excludePattern ?: DEFAULT_EXCLUDE_PATTERN
-
-        logger.info("includePattern: '{}', excludePattern: '{}'", includePattern, excludePattern)
-        def resolvedArtifacts = new HashSet<MavenGAV>()
+        logger.info("includePattern: '{}', excludePattern: '{}'", includePattern.getOrNull(), excludePattern.getOrNull())
+        // One dependency per coordinates with the analyzed configurations the dependency is used in
+        def spillThreshold = dependenciesSpillThreshold
+        def resolvedArtifacts = spillThreshold == null ? new DependencyGraph() : null
+        def spilledArtifacts = spillThreshold == null ? null : new SpillingDependencySet(temporaryDir, spillThreshold)
+        Map<String, Boolean> analyzedConfigurations = new HashMap<>()
         def resProblemsMessages = new StringBuilder()
 
-        def legacyVersion = GradleVersion.current() < GradleVersion.version('6.0')
-
-        def projectsToAnalyze = new HashSet<Project>()
-        if (onlyCurrentProject) {
-            projectsToAnalyze.add(project)
-        } else {
-            projectsToAnalyze.addAll(project.rootProject.allprojects)
+        def addDependency = { CanonicalGAV gav ->
+            def usages = gav.usages.findAll { DependencyUsage usage ->
+                def analyzed = analyzedConfigurations.get(usage.configuration)
+                if (analyzed == null) {
+                    analyzed = isConfigurationAnalyzed(usage.configuration)
+                    analyzedConfigurations.put(usage.configuration, analyzed)
+                }
+                analyzed
+            }
+            if (!usages) {
+                return
+            }
+            if (spilledArtifacts != null) {
+                gav.usages = usages
+                spilledArtifacts.add(gav)
+            } else {
+                int dependency = resolvedArtifacts.add(gav.group, gav.artifact, gav.version, gav.classifier,
+                        gav.extension, gav.excludeRules)
+                usages.each { DependencyUsage usage -> resolvedArtifacts.addUsage(dependency, usage) }
+            }
         }
-        def task = this
-        projectsToAnalyze.forEach { project$ ->
-            def configurationsToAnalyze = new ArrayList(project$.configurations)
-            configurationsToAnalyze.forEach { Configuration configuration ->
-                if (excludePattern != null && configuration.name.matches(excludePattern)) {
-                    logger.info("Skip '{}' configuration because of exclude pattern '{}'", configuration.name, excludePattern)
-                } else if (includePattern != null && !configuration.name.matches(includePattern)) {
-                    logger.info("Skip '{}' configuration because of include pattern '{}'", configuration.name, includePattern)
-                } else {
-                    try {
-                        if (legacyVersion) {
-                            configuration.resolvedConfiguration.resolvedArtifacts.forEach { artifact ->
-                                resolvedArtifacts.add(artifactToMavenGav(project$, configuration, artifact))
-                            }
-                        } else {
-                            def configurationName = "${configuration.name}_license_plugin"
-                            Configuration toAnalyze = Optional.ofNullable(project$.getConfigurations().findByName(configurationName))
-                                    .orElseGet {
-                                        Configuration created = project$.getConfigurations().create(configurationName)
-                                        created.extendsFrom(configuration)
-                                        created.canBeResolved = true
-                                        created.canBeConsumed = true
-                                        created.transitive = true
-                                        created
-                                    }
-                            toAnalyze.resolvedConfiguration.lenientConfiguration.getFirstLevelModuleDependencies().forEach { dependency ->
-                                if (!isProjectDependency(dependency)) {
-                                    resolvedArtifacts.addAll(dependencyToMavenGav(project$, configuration, dependency))
-                                }
-                            }
-                            toAnalyze.resolvedConfiguration.lenientConfiguration.getUnresolvedModuleDependencies().forEach { unresolvedDependency ->
-                                // Some dependencies couldn't be resolved
-                                logger.debug("Unresolved dependency {}", unresolvedDependency)
-                            }
-                        }
-                    } catch (Exception exception) {
-                        def innerEx = exception
-                        resProblemsMessages.append "Unable to resolve configuration\n"
-                        resProblemsMessages.append "The resulting list of licenses may be incomplete or empty\n"
-                        do {
-                            resProblemsMessages.append "${innerEx.localizedMessage}\n"
-                            innerEx = innerEx.cause
-                        } while (innerEx)
-
-                        def strictDR = !(project.hasProperty(STRICT_RESOLVER) && project.property(STRICT_RESOLVER) == 'false')
-                        resProblemsMessages.append "\nThe '${STRICT_RESOLVER}' mode is set to ${strictDR}\n"
-
-                        if (strictDR) {
-                            task.printFoundProblems(resProblemsMessages)
-                            throw exception
-                        } else {
-                            try {
-                                configuration.resolvedConfiguration.resolvedArtifacts.forEach {
-                                    resolvedArtifacts.add(artifactToMavenGav(project$, configuration, it))
-                                }
-                            } catch (Exception exception2) {
-                                logger.error "Unable to resolve original configuration ${configuration.name}", exception2
-                            }
-                        }
-                    }
+        // The collected files are ordered by project, so the result does not depend on the order the collecting tasks run
+        collectedDependencies.files.forEach { File file ->
+            if (spilledArtifacts != null) {
+                // The collected files are streamed, the records are not kept by the service
+                if (file.exists()) {
+                    DependenciesJson.read(file, true, addDependency)
                 }
+            } else {
+                def collected = licensedDependenciesService != null ?
+                        licensedDependenciesService.get().getCollectedDependencies(file) :
+                        LicensedDependenciesService.readCollectedDependencies(file)
+                collected.each(addDependency)
             }
+        }
+        collectedResolvingProblems.files.findAll { it.exists() }.forEach { File file ->
+            resProblemsMessages.append(file.text)
+        }
 
-            logger.info("Resolved dependencies:\n${resolvedArtifacts.collect { it.logString() }.join(",\n")}")
-            def builder = new JsonBuilder()
-            builder(resolvedArtifacts.toList())
-            dependenciesListFile.write(builder.toPrettyString())
+        Iterable<CanonicalGAV> dependencies = spilledArtifacts != null ? spilledArtifacts : resolvedArtifacts.canonicalGAVs
+        def dependencyKeys = new HashSet<String>()
+        try {
+            if (spilledArtifacts != null) {
+                logger.info("Dependencies are merged from {} spilled runs", spilledArtifacts.runCount)
+            }
+            if (logger.infoEnabled) {
+                logger.info("Resolved dependencies:\n${dependencies.collect { it.logString() }.join(",\n")}")
+            }
+            DependenciesJson.write(dependenciesListFile, dependencies)
+            if (dependenciesSnapshot && spilledArtifacts != null) {
+                // The spilled dependencies are sorted, so they are streamed to the snapshot instead of being held in memory
+                DependenciesSnapshot.writeSorted(dependenciesSnapshotFile, spilledArtifacts)
+            } else if (dependenciesSnapshot) {
+                DependenciesSnapshot.write(dependenciesSnapshotFile, dependencies)
+            }
+            if (transitiveDependencies) {
+                dependencies.each { dependencyKeys.add(LicensesOutputSplitter.getKey(it.group, it.artifact, it.version)) }
+            }
+        } finally {
+            spilledArtifacts?.close()
+        }
+        if (gradlePomResolution) {
+            def pomLicenses = new TreeMap<String, ModuleLicenses>()
+            collectedPomLicenses.files.findAll { it.exists() }.forEach { File file ->
+                pomLicenses.putAll(PomLicensesJson.read(file))
+            }
+            PomLicensesJson.write(pomLicensesFile, pomLicenses)
         }
-        printFoundProblems(resProblemsMessages)
+        if (transitiveDependencies) {
+            def graph = new HashMap<String, Set<String>>()
+            collectedTransitiveDependencies.files.findAll { it.exists() }.forEach { File file ->
+                TransitiveDependenciesJson.merge(graph, TransitiveDependenciesJson.read(file))
+            }
+            // The graphs of the analyzed projects may hold the dependencies of configurations not analyzed
+            def closure = TransitiveDependenciesJson.closure(graph, dependencyKeys)
+            TransitiveDependenciesJson.write(transitiveDependenciesFile,
+                    closure.collectEntries { [(it): graph.get(it) ?: []] } as Map<String, Collection<String>>)
+        }
+        printFoundProblems(logger, resolvingProblemsFile, resProblemsMessages)
     }
 
-    private void printFoundProblems(StringBuilder resProblemsMessages) {
+    static void printFoundProblems(Logger logger, File resolvingProblemsFile, StringBuilder resProblemsMessages) {
         if (resProblemsMessages.toString().trim()) {
             addChoosingVariantsInstruction(resProblemsMessages)
             logger.error(resProblemsMessages.toString())
             // print to file as well
-            getResolvingProblemsFile().withWriterAppend { writer ->
+            resolvingProblemsFile.withWriterAppend { writer ->
                 writer.writeLine(resProblemsMessages.toString() + "\n")
             }
         }
@@ -165,6 +309,11 @@ class LicensedDependenciesAnalyzingTask extends DefaultTask {
     }
 
     static MavenGAV artifactToMavenGav(Project project, Configuration configuration, ResolvedArtifact resolvedArtifact) {
+        return artifactToMavenGav(project, configuration, resolvedArtifact, new ExcludeRulesIndex(configuration))
+    }
+
+    static MavenGAV artifactToMavenGav(Project project, Configuration configuration, ResolvedArtifact resolvedArtifact,
+                                       ExcludeRulesIndex excludeRules) {
         return new MavenGAV(project: project.name,
                 configuration: configuration.name,
                 group: resolvedArtifact.moduleVersion.id.group,
@@ -172,28 +321,23 @@ class LicensedDependenciesAnalyzingTask extends DefaultTask {
                 version: resolvedArtifact.moduleVersion.id.version,
                 classifier: resolvedArtifact.classifier,
                 extension: resolvedArtifact.extension,
-                excludeRules: getExcludedRules(configuration, resolvedArtifact)
+                excludeRules: excludeRules.get(resolvedArtifact.moduleVersion.id.group, resolvedArtifact.moduleVersion.id.name)
         )
     }
 
     static Collection<MavenGAV> dependencyToMavenGav(Project project, Configuration configuration, ResolvedDependency resolvedDependency) {
+        return dependencyToMavenGav(project, configuration, resolvedDependency, new ExcludeRulesIndex(configuration))
+    }
+
+    static Collection<MavenGAV> dependencyToMavenGav(Project project, Configuration configuration, ResolvedDependency resolvedDependency,
+                                                     ExcludeRulesIndex excludeRules) {
         return resolvedDependency.moduleArtifacts.collect {
-            artifactToMavenGav(project, configuration, it)
+            artifactToMavenGav(project, configuration, it, excludeRules)
         }
     }
 
     static List<MavenExcludeRule> getExcludedRules(Configuration configuration, ResolvedArtifact artifact) {
-        if (!configuration.transitive) {
-            return [new MavenExcludeRule(group: "*", artifact: "*")]
-        }
-        def dep = configuration.allDependencies.withType(ModuleDependency).find {
-            it.group == artifact.moduleVersion.id.group && it.name == artifact.moduleVersion.id.name
-        }
-        if (dep == null) return null
-        return !dep.transitive ? [new MavenExcludeRule(group: "*", artifact: "*")] :
-                dep.excludeRules?.collect { rule ->
-                    new MavenExcludeRule(group: rule.group ?: "*", artifact: rule.module ?: "*")
-                }?.toList()
+        return new ExcludeRulesIndex(configuration).get(artifact.moduleVersion.id.group, artifact.moduleVersion.id.name)
     }
 
     static def addChoosingVariantsInstruction(StringBuilder sb) {
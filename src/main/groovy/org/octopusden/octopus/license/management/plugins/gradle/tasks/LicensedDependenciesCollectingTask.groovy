@@ -0,0 +1,513 @@
+package org.octopusden.octopus.license.management.plugins.gradle.tasks
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.Project
+import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.Dependency
+import org.gradle.api.artifacts.ModuleDependency
+import org.gradle.api.artifacts.ModuleVersionIdentifier
+import org.gradle.api.artifacts.ResolvedDependency
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier
+import org.gradle.api.artifacts.result.DependencyResult
+import org.gradle.api.artifacts.result.ResolvedComponentResult
+import org.gradle.api.artifacts.result.ResolvedDependencyResult
+import org.gradle.api.artifacts.result.ResolvedVariantResult
+import org.gradle.api.attributes.Category
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.api.provider.SetProperty
+import org.gradle.api.specs.Specs
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.TaskAction
+import org.gradle.api.tasks.TaskProvider
+import org.gradle.util.GradleVersion
+import org.octopusden.octopus.license.management.plugins.gradle.LicenseGradlePlugin
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CollectedDependencies
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenGAV
+import org.octopusden.octopus.license.management.plugins.gradle.services.LicensedDependenciesService
+import org.octopusden.octopus.license.management.plugins.gradle.utils.ConfigurationResolutionPlan
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.ExcludeRulesIndex
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicenseResolver
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicensesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.TransitiveDependenciesJson
+
+import static org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask.STRICT_RESOLVER
+import static org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask.artifactToMavenGav
+import static org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask.dependencyToMavenGav
+import static org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask.isProjectDependency
+import static org.octopusden.octopus.license.management.plugins.gradle.tasks.LicensedDependenciesAnalyzingTask.printFoundProblems
+import static org.octopusden.octopus.license.management.plugins.gradle.utils.MavenParametersUtils.propertyIsFalse
+
+/**
+ * Resolve configurations of a single project requested by the license analyzing tasks.
+ * The collecting tasks of different projects are independent, so Gradle runs them in parallel.
+ * <p>
+ * The dependency graphs of the configurations are the task inputs (Gradle 7.4 and above, the task is never up-to-date before),
+ * the dependencies are collected from them by the task action, or when the configuration cache entry is stored,
+ * so the task action does not access the project then. Every configuration is resolved once for both.
+ * <p>
+ * With {@code license.resolution-mode=metadata} the configurations are resolved through detached copies
+ * and only the dependency graph is walked, so no artifact files are downloaded.
+ * <p>
+ * Configurations covered by another requested configuration are not resolved,
+ * see {@link ConfigurationResolutionPlan}.
+ * <p>
+ * For the aggregated Maven run and for the licenses read from POMs the resolved dependency graphs are collected as well,
+ * see {@link TransitiveDependenciesJson}.
+ * <p>
+ * With {@code license.pom-resolution=gradle} the licenses of the dependencies and their transitive dependencies
+ * are read from their POMs resolved by Gradle as well, see {@link PomLicenseResolver}.
+ */
+class LicensedDependenciesCollectingTask extends DefaultTask {
+    private static final Logger LOGGER = Logging.getLogger(LicensedDependenciesCollectingTask.class)
+
+    public static final String NAME = "collectLicensedDependencies"
+    public static final String LICENSE_PLUGIN_CONFIGURATION_SUFFIX = "_license_plugin"
+
+    private static final boolean LEGACY_VERSION = GradleVersion.current() < GradleVersion.version('6.0')
+    private static final boolean METADATA_MODE_SUPPORTED = GradleVersion.current() >= GradleVersion.version('6.8')
+    private static final boolean ROOT_COMPONENT_SUPPORTED = GradleVersion.current() >= GradleVersion.version('7.4')
+
+    @Input
+    final SetProperty<String> configurationNames = project.objects.setProperty(String)
+
+    @OutputFile
+    final File dependenciesListFile = project.file("build/licensed-dependencies/dependencies.json")
+
+    @OutputFile
+    final File resolvingProblemsFile = project.file("build/licensed-dependencies/resolving_problems.txt")
+
+    @Input
+    final boolean gradlePomResolution = LicenseGradlePlugin.isGradlePomResolution(project)
+
+    @Input
+    final boolean transitiveDependencies = LicenseGradlePlugin.isTransitiveDependenciesCollected(project)
+
+    private final File transitiveDependenciesListFile = project.file("build/licensed-dependencies/transitive-dependencies.json")
+
+    @OutputFile
+    @org.gradle.api.tasks.Optional
+    File getTransitiveDependenciesFile() {
+        return transitiveDependencies ? transitiveDependenciesListFile : null
+    }
+
+    @Input
+    final boolean metadataOnly = LicenseGradlePlugin.isMetadataResolutionMode(project)
+
+    @Input
+    final boolean strictResolver = !(project.hasProperty(STRICT_RESOLVER) && project.property(STRICT_RESOLVER) == 'false')
+
+    private final File pomLicensesListFile = project.file("build/licensed-dependencies/pom-licenses.json")
+
+    @OutputFile
+    @org.gradle.api.tasks.Optional
+    File getPomLicensesFile() {
+        return gradlePomResolution ? pomLicensesListFile : null
+    }
+
+    /**
+     * Dependency graphs of the resolved configurations by configuration name, empty before Gradle 7.4.
+     */
+    @Input
+    final MapProperty<String, ResolvedComponentResult> resolvedComponents = project.objects.mapProperty(String, ResolvedComponentResult)
+
+    /**
+     * Dependencies collected from the resolved configurations, they are not a task input.
+     */
+    @Internal
+    final Property<CollectedDependencies> collectedDependencies = project.objects.property(CollectedDependencies)
+
+    @Internal
+    final Provider<LicensedDependenciesService> licensedDependenciesService = LicensedDependenciesService.register(project)
+
+    private final boolean offline = project.gradle.startParameter.offline
+
+    private final String projectPath = project.path
+
+    // Spilling analyzing tasks stream the collected files, so the dependencies are not kept by the service
+    private final boolean keepDependencies = LicenseGradlePlugin.getDependenciesSpillThreshold(project) == null
+
+    LicensedDependenciesCollectingTask() {
+        def configurations = new ResolvableConfigurations(project, metadataOnly)
+        resolvedComponents.set(resolveComponents(project, configurationNames, configurations))
+        collectedDependencies.set(collect(project, configurationNames, configurations, strictResolver, transitiveDependencies))
+        if (!ROOT_COMPONENT_SUPPORTED) {
+            outputs.upToDateWhen(Specs.SATISFIES_NONE)
+        }
+        if (licensedDependenciesService != null) {
+            usesService(licensedDependenciesService)
+        }
+    }
+
+    static TaskProvider<LicensedDependenciesCollectingTask> register(Project project) {
+        if (project.tasks.names.contains(NAME)) {
+            return project.tasks.named(NAME) as TaskProvider<LicensedDependenciesCollectingTask>
+        }
+        def isLicenseCheckRequired = propertyIsFalse(project, LicenseGradlePlugin.LICENSE_SKIP_PROPERTY)
+        return project.tasks.register(NAME, LicensedDependenciesCollectingTask) {
+            it.onlyIf { return isLicenseCheckRequired }
+        }
+    }
+
+    private static Provider<Map<String, ResolvedComponentResult>> resolveComponents(Project project, Provider<Set<String>> configurationNames,
+                                                                                    ResolvableConfigurations configurations) {
+        def offline = project.gradle.startParameter.offline
+        if (offline || !ROOT_COMPONENT_SUPPORTED) {
+            return project.provider { [:] as Map<String, ResolvedComponentResult> }
+        }
+        return configurationNames.flatMap { Set<String> names ->
+            Provider<Map<String, ResolvedComponentResult>> components = project.provider { new TreeMap<String, ResolvedComponentResult>() }
+            configurations.getResolved(names).each { Configuration configuration ->
+                def name = configuration.name
+                // The root component provider of Gradle is wired, so the graph is resolved and fingerprinted by Gradle
+                def rootComponent = configurations.get(configuration).incoming.resolutionResult.rootComponent
+                components = components.zip(rootComponent) { Map<String, ResolvedComponentResult> resolved, ResolvedComponentResult component ->
+                    resolved.put(name, component)
+                    return resolved
+                }
+            }
+            return components
+        }
+    }
+
+    private static Provider<CollectedDependencies> collect(Project project, Provider<Set<String>> configurationNames,
+                                                           ResolvableConfigurations configurations, boolean strictDR,
+                                                           boolean transitiveDependencies) {
+        def offline = project.gradle.startParameter.offline
+        def gradlePomResolution = LicenseGradlePlugin.isGradlePomResolution(project)
+        return project.provider {
+            if (offline) {
+                return new CollectedDependencies()
+            }
+            def collected = resolveConfigurations(project, configurationNames.get(), strictDR, configurations, transitiveDependencies)
+            if (gradlePomResolution && !collected.resolvingFailed) {
+                def keys = new LinkedHashSet<String>()
+                collected.dependencies.each { keys.add(LicensesOutputSplitter.getKey(it.group, it.artifact, it.version)) }
+                // The licenses of the transitive dependencies are written for the dependencies resolved from POMs
+                collected.transitiveDependencies.each { String module, Set<String> children ->
+                    keys.add(module)
+                    keys.addAll(children)
+                }
+                collected.pomLicenses = PomLicenseResolver.resolve(project, keys)
+            }
+            return collected
+        }
+    }
+
+    static CollectedDependencies resolveConfigurations(Project project, Set<String> configurationNames, boolean strictDR,
+                                                       ResolvableConfigurations resolvableConfigurations, boolean transitiveDependencies) {
+        def resolvedArtifacts = new LinkedHashSet<MavenGAV>()
+        def graph = new TreeMap<String, Set<String>>()
+        def resProblemsMessages = new StringBuilder()
+        def metadataOnly = resolvableConfigurations.metadataOnly
+
+        def plan = resolvableConfigurations.getPlan(configurationNames)
+        Map<String, Collection<MavenGAV>> collectedByConfiguration = new TreeMap<>()
+
+        for (Configuration configuration : resolvableConfigurations.getResolved(configurationNames)) {
+            def collected = new LinkedHashSet<MavenGAV>()
+            collectedByConfiguration.put(configuration.name, collected)
+            def excludeRules = new ExcludeRulesIndex(configuration)
+            try {
+                Configuration toAnalyze = resolvableConfigurations.get(configuration)
+                if (LEGACY_VERSION) {
+                    toAnalyze.resolvedConfiguration.resolvedArtifacts.forEach { artifact ->
+                        collected.add(artifactToMavenGav(project, configuration, artifact, excludeRules))
+                    }
+                } else if (metadataOnly) {
+                    collected.addAll(collectFromResolutionResult(project, configuration, toAnalyze, excludeRules))
+                } else {
+                    toAnalyze.resolvedConfiguration.lenientConfiguration.getFirstLevelModuleDependencies().forEach { dependency ->
+                        if (!isProjectDependency(dependency)) {
+                            collected.addAll(dependencyToMavenGav(project, configuration, dependency, excludeRules))
+                        }
+                    }
+                    toAnalyze.resolvedConfiguration.lenientConfiguration.getUnresolvedModuleDependencies().forEach { unresolvedDependency ->
+                        // Some dependencies couldn't be resolved
+                        LOGGER.debug("Unresolved dependency {}", unresolvedDependency)
+                    }
+                }
+                // Before Gradle 6.0 all resolved artifacts are collected, the transitive ones included
+                if (transitiveDependencies && !LEGACY_VERSION && configuration.transitive) {
+                    collectTransitiveDependencies(toAnalyze.incoming.resolutionResult.root, graph)
+                }
+            } catch (Exception exception) {
+                def innerEx = exception
+                resProblemsMessages.append "Unable to resolve configuration\n"
+                resProblemsMessages.append "The resulting list of licenses may be incomplete or empty\n"
+                do {
+                    resProblemsMessages.append "${innerEx.localizedMessage}\n"
+                    innerEx = innerEx.cause
+                } while (innerEx)
+
+                resProblemsMessages.append "\nThe '${STRICT_RESOLVER}' mode is set to ${strictDR}\n"
+
+                if (strictDR) {
+                    LOGGER.debug("Unable to resolve configuration {}", configuration.name, exception)
+                    return new CollectedDependencies(resolvingProblems: resProblemsMessages.toString(), resolvingFailed: true)
+                } else if (!metadataOnly) {
+                    try {
+                        configuration.resolvedConfiguration.resolvedArtifacts.forEach {
+                            collected.add(artifactToMavenGav(project, configuration, it, excludeRules))
+                        }
+                    } catch (Exception exception2) {
+                        LOGGER.error "Unable to resolve original configuration ${configuration.name}", exception2
+                    }
+                }
+            }
+            plan?.getCoveredConfigurations(configuration.name)?.each { String coveredName ->
+                collectedByConfiguration.put(coveredName,
+                        collectCoveredDependencies(project.configurations.getByName(coveredName), collected))
+            }
+        }
+        collectedByConfiguration.values().each { resolvedArtifacts.addAll(it) }
+        return new CollectedDependencies(dependencies: CanonicalGAV.fromMavenGAVs(resolvedArtifacts),
+                resolvingProblems: resProblemsMessages.toString(),
+                transitiveDependencies: graph)
+    }
+
+    /**
+     * Adds the direct dependencies of every module of the resolved graph to {@code graph}.
+     * Dependencies of project components other than the root are not walked, they are collected by their own projects.
+     * Platforms of the Gradle module metadata are skipped, Maven does not list them as dependencies.
+     */
+    static void collectTransitiveDependencies(ResolvedComponentResult root, Map<String, Set<String>> graph) {
+        def visited = new HashSet<Object>([root.id])
+        def queue = new ArrayDeque<ResolvedComponentResult>([root])
+        while (!queue.isEmpty()) {
+            def component = queue.poll()
+            def module = component.id instanceof ModuleComponentIdentifier ? getModuleKey(component) : null
+            def children = module != null ? graph.computeIfAbsent(module) { new TreeSet<String>() } : null
+            component.dependencies.each { DependencyResult dependency ->
+                if (!(dependency instanceof ResolvedDependencyResult) || dependency.constraint) {
+                    return
+                }
+                def resolved = dependency as ResolvedDependencyResult
+                def selected = resolved.selected
+                if (!(selected.id instanceof ModuleComponentIdentifier)
+                        || (METADATA_MODE_SUPPORTED && isPlatform(resolved.resolvedVariant))) {
+                    return
+                }
+                children?.add(getModuleKey(selected))
+                if (visited.add(selected.id)) {
+                    queue.add(selected)
+                }
+            }
+        }
+    }
+
+    private static String getModuleKey(ResolvedComponentResult component) {
+        def id = component.moduleVersion
+        return LicensesOutputSplitter.getKey(id.group, id.name, id.version)
+    }
+
+    /**
+     * Selects the dependencies declared by the configuration from the first level dependencies of a configuration covering it,
+     * see {@link ConfigurationResolutionPlan}.
+     */
+    private static Collection<MavenGAV> collectCoveredDependencies(Configuration configuration, Collection<MavenGAV> dependencies) {
+        Set<String> declared = configuration.allDependencies.withType(ModuleDependency)
+                .collect { "${it.group}:${it.name}".toString() }
+                .toSet()
+        def excludeRules = new ExcludeRulesIndex(configuration)
+        return dependencies.findAll { declared.contains("${it.group}:${it.artifact}".toString()) }.collect { MavenGAV gav ->
+            new MavenGAV(project: gav.project,
+                    configuration: configuration.name,
+                    group: gav.group,
+                    artifact: gav.artifact,
+                    version: gav.version,
+                    classifier: gav.classifier,
+                    extension: gav.extension,
+                    excludeRules: excludeRules.get(gav.group, gav.artifact))
+        }
+    }
+
+    /**
+     * Collects the first level module dependencies of the configuration from its resolution result.
+     * The configuration is resolved through a detached copy, see {@link ResolvableConfigurations},
+     * so neither artifact files are downloaded nor configurations are added to the project.
+     * Classifiers and extensions are taken from the artifacts declared by the dependencies, the components with no declared
+     * artifacts are collected as in the artifact resolution mode, the artifact files are not downloaded for them either.
+     */
+    static Collection<MavenGAV> collectFromResolutionResult(Project project, Configuration configuration, Configuration detached,
+                                                            ExcludeRulesIndex excludeRulesIndex) {
+        def dependencies = new LinkedHashSet<MavenGAV>()
+        Map<ModuleVersionIdentifier, ResolvedDependency> firstLevelDependencies = null
+        detached.incoming.resolutionResult.root.dependencies.each { DependencyResult dependency ->
+            if (!(dependency instanceof ResolvedDependencyResult)) {
+                // Some dependencies couldn't be resolved
+                LOGGER.debug("Unresolved dependency {}", dependency)
+                return
+            }
+            def resolved = dependency as ResolvedDependencyResult
+            if (resolved.constraint || !(resolved.selected.id instanceof ModuleComponentIdentifier)
+                    || isPlatform(resolved.resolvedVariant)) {
+                return
+            }
+            def id = resolved.selected.moduleVersion
+            def excludeRules = excludeRulesIndex.get(id.group, id.name)
+            def declaredArtifacts = configuration.allDependencies.withType(ModuleDependency)
+                    .findAll { it.group == id.group && it.name == id.name }
+                    .collectMany { it.artifacts }
+            if (declaredArtifacts.isEmpty()) {
+                if (firstLevelDependencies == null) {
+                    // The module artifacts of the same resolution, only their metadata is read
+                    firstLevelDependencies = detached.resolvedConfiguration.lenientConfiguration.firstLevelModuleDependencies
+                            .collectEntries { [(it.module.id): it] }
+                }
+                def firstLevelDependency = firstLevelDependencies.get(id)
+                if (firstLevelDependency != null) {
+                    dependencies.addAll(dependencyToMavenGav(project, configuration, firstLevelDependency, excludeRulesIndex))
+                }
+            } else {
+                declaredArtifacts.each { artifact ->
+                    dependencies.add(new MavenGAV(project: project.name,
+                            configuration: configuration.name,
+                            group: id.group,
+                            artifact: id.name,
+                            version: id.version,
+                            classifier: artifact.classifier,
+                            extension: artifact.extension ?: artifact.type,
+                            excludeRules: excludeRules))
+                }
+            }
+        }
+        return dependencies
+    }
+
+    private static boolean isPlatform(ResolvedVariantResult variant) {
+        def category = variant.attributes.keySet().find { it.name == Category.CATEGORY_ATTRIBUTE.name }
+        def value = category != null ? variant.attributes.getAttribute(category)?.toString() : null
+        return value == Category.REGULAR_PLATFORM || value == Category.ENFORCED_PLATFORM
+    }
+
+    /**
+     * Resolvable configurations the dependencies of the analyzed configurations are collected from:
+     * the '_license_plugin' configurations extending them, their detached copies in metadata resolution mode,
+     * or the analyzed configurations themselves before Gradle 6.0.
+     * The same instances serve the task inputs and the collecting, so every configuration is resolved once.
+     */
+    static class ResolvableConfigurations {
+        private final Project project
+        private final boolean metadataOnly
+        private final Map<String, Configuration> configurations = new HashMap<>()
+        private final Map<Set<String>, ConfigurationResolutionPlan> plans = new HashMap<>()
+
+        ResolvableConfigurations(Project project, boolean metadataOnly) {
+            this.project = project
+            this.metadataOnly = metadataOnly && METADATA_MODE_SUPPORTED
+            if (metadataOnly && !METADATA_MODE_SUPPORTED) {
+                LOGGER.warn("Metadata resolution mode requires Gradle 6.8 or above, artifacts are resolved")
+            }
+        }
+
+        boolean getMetadataOnly() {
+            return metadataOnly
+        }
+
+        /**
+         * Gradle before 6.0 collects all resolved artifacts, not only the first level ones, so every configuration is resolved then.
+         *
+         * @return resolution plan of the configurations, {@code null} before Gradle 6.0
+         */
+        ConfigurationResolutionPlan getPlan(Set<String> configurationNames) {
+            return LEGACY_VERSION ? null : plans.computeIfAbsent(configurationNames) { planResolution(getConfigurations(it)) }
+        }
+
+        /**
+         * @return analyzed configurations to resolve, sorted by name
+         */
+        List<Configuration> getResolved(Set<String> configurationNames) {
+            def plan = getPlan(configurationNames)
+            return getConfigurations(configurationNames).findAll { plan == null || plan.resolvedConfigurations.contains(it.name) }
+        }
+
+        @SuppressWarnings('ConfigurationAvoidance')
+        Configuration get(Configuration configuration) {
+            return configurations.computeIfAbsent(configuration.name) {
+                if (LEGACY_VERSION) {
+                    return configuration
+                }
+                if (metadataOnly) {
+                    // Same dependencies and constraints as the '_license_plugin' configuration extending the analyzed one
+                    Configuration detached = project.configurations.detachedConfiguration(
+                            configuration.allDependencies.collect { it.copy() } as Dependency[])
+                    detached.dependencyConstraints.addAll(configuration.allDependencyConstraints)
+                    detached.transitive = true
+                    return detached
+                }
+                def configurationName = "${configuration.name}${LICENSE_PLUGIN_CONFIGURATION_SUFFIX}"
+                return Optional.ofNullable(project.getConfigurations().findByName(configurationName))
+                        .orElseGet {
+                            Configuration created = project.getConfigurations().create(configurationName)
+                            created.extendsFrom(configuration)
+                            created.canBeResolved = true
+                            created.canBeConsumed = true
+                            created.transitive = true
+                            created
+                        }
+            }
+        }
+
+        private ConfigurationResolutionPlan planResolution(List<Configuration> configurations) {
+            Map<String, Collection<Object>> dependencies = new LinkedHashMap<>()
+            configurations.each { Configuration configuration ->
+                Collection<Object> inputs = new ArrayList<>()
+                inputs.addAll(configuration.allDependencies)
+                inputs.addAll(configuration.allDependencyConstraints)
+                if (!inputs.isEmpty()) {
+                    inputs.addAll(configuration.hierarchy.collectMany { it.excludeRules })
+                    def attributes = get(configuration).attributes
+                    inputs.addAll(attributes.keySet().collect { "${it.name}=${attributes.getAttribute(it)}".toString() })
+                    inputs.add("transitive=${configuration.transitive}".toString())
+                }
+                dependencies.put(configuration.name, inputs)
+            }
+            def plan = ConfigurationResolutionPlan.plan(dependencies)
+            LOGGER.info("Resolve configurations {} of {}, {} resolutions saved", plan.resolvedConfigurations,
+                    configurations.size(), plan.savedResolutions)
+            return plan
+        }
+
+        private List<Configuration> getConfigurations(Set<String> configurationNames) {
+            return configurationNames.toSorted()
+                    .collect { project.configurations.findByName(it) }
+                    .findAll { it != null }
+        }
+    }
+
+    @TaskAction
+    def collectLicensedDependencies() {
+        if (offline) {
+            logger.info("Skip collecting dependencies because of offline mode")
+            return
+        }
+
+        def collected = collectedDependencies.get()
+        if (collected.resolvingFailed) {
+            resolvingProblemsFile.delete()
+            printFoundProblems(LOGGER, resolvingProblemsFile, new StringBuilder(collected.resolvingProblems))
+            throw new GradleException("Unable to resolve configurations of project ${projectPath}, see ${resolvingProblemsFile}")
+        }
+        DependenciesJson.write(dependenciesListFile, collected.dependencies)
+        resolvingProblemsFile.text = collected.resolvingProblems
+        if (gradlePomResolution) {
+            PomLicensesJson.write(pomLicensesFile, collected.pomLicenses)
+        }
+        if (transitiveDependencies) {
+            TransitiveDependenciesJson.write(transitiveDependenciesFile, collected.transitiveDependencies)
+        }
+        if (keepDependencies) {
+            licensedDependenciesService?.get()?.store(dependenciesListFile, collected.dependencies)
+        }
+    }
+}
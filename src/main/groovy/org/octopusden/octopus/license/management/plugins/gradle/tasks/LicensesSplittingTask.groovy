@@ -0,0 +1,103 @@
+package org.octopusden.octopus.license.management.plugins.gradle.tasks
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter
+import org.octopusden.octopus.license.management.plugins.gradle.utils.TransitiveDependenciesJson
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+/**
+ * Takes the licenses of the project dependencies and their transitive dependencies from the licenses of the whole build,
+ * so Maven is run once by the aggregated {@link LicenseTask} instead of once per project.
+ */
+class LicensesSplittingTask extends DefaultTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LicensesSplittingTask.class)
+
+    /**
+     * See {@link #getSourceDependenciesFile()}.
+     */
+    @Internal
+    String sourceDependencies = "build/dependencies.json"
+
+    /**
+     * See {@link #getSourceTransitiveDependenciesFile()}.
+     */
+    @Internal
+    String sourceTransitiveDependencies = "build/transitive-dependencies.json"
+
+    /**
+     * Licenses directory of the aggregated {@link LicenseTask}, it does not exist if the licenses have not been generated.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    File aggregatedLicensesDirectory
+
+    private final File projectDirectory = project.projectDir
+
+    @OutputDirectory
+    File getLicensesDirectory() {
+        return new File(projectDirectory, "build/licenses")
+    }
+
+    /**
+     * Dependencies of the project, see {@link LicensedDependenciesAnalyzingTask#getDependenciesListFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourceDependenciesFile() {
+        return findFile(sourceDependencies)
+    }
+
+    /**
+     * Resolved dependency graph of the project, see {@link LicensedDependenciesAnalyzingTask#getTransitiveDependenciesFile()}.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    File getSourceTransitiveDependenciesFile() {
+        return findFile(sourceTransitiveDependencies)
+    }
+
+    protected File resolveFile(String path) {
+        File file = new File(path)
+        return file.absolute ? file : new File(projectDirectory, path)
+    }
+
+    /**
+     * @return the file of the path, {@code null} if it does not exist as the dependencies have not been analyzed
+     */
+    protected File findFile(String path) {
+        File file = resolveFile(path)
+        return file.exists() ? file : null
+    }
+
+    @TaskAction
+    void splitLicenses() {
+        if (!aggregatedLicensesDirectory.directory) {
+            LOGGER.info("Skip splitting licenses because {} does not exist", aggregatedLicensesDirectory)
+            return
+        }
+        def dependencies = new HashSet<String>()
+        DependenciesJson.read(resolveFile(sourceDependencies), false) { CanonicalGAV gav ->
+            dependencies.add(LicensesOutputSplitter.getKey(gav.group, gav.artifact, gav.version))
+        }
+        def transitiveDependencies = TransitiveDependenciesJson.closure(
+                TransitiveDependenciesJson.read(resolveFile(sourceTransitiveDependencies)), dependencies)
+        transitiveDependencies.removeAll(dependencies)
+        LOGGER.info("Take licenses of {} dependencies and {} transitive dependencies from {}", dependencies.size(),
+                transitiveDependencies.size(), aggregatedLicensesDirectory)
+        LicensesOutputSplitter.split(aggregatedLicensesDirectory, licensesDirectory,
+                LicensesOutputSplitter.selectDependencies(aggregatedLicensesDirectory, dependencies, transitiveDependencies))
+    }
+}
@@ -14,11 +14,14 @@
  */
 package org.octopusden.octopus.license.management.plugins.gradle.tasks
 
-import com.github.gradle.node.npm.task.NpxTask
-import groovy.ant.FileNameFinder
 import org.octopusden.octopus.license.management.plugins.gradle.LicenseGradlePlugin
+import org.octopusden.octopus.license.management.plugins.gradle.services.LicenseRegistryService
 import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryClient
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryIndex
 import org.gradle.api.Project
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.process.ExecOperations
 import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.InputDirectory
 import org.gradle.api.tasks.Internal
@@ -27,7 +30,9 @@ import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.TaskAction
 import org.gradle.api.DefaultTask
 
-class ProcessNodeLicensesTask extends DefaultTask {
+import javax.inject.Inject
+
+abstract class ProcessNodeLicensesTask extends DefaultTask {
 
     public final static String NAME = 'processNodeLicenses'
     public final static String DESCRIPTION = 'https://www.npmjs.com/package/license-checker#options Required:-Plicense.skip=false -Pnode.skip=false'
@@ -38,8 +43,22 @@ class ProcessNodeLicensesTask extends DefaultTask {
 
     public final String licenseRegistryGitRepository = LicenseGradlePlugin.getLicenseRegistryGitRepository(project)
 
+    protected final String licenseWhitelistFile = LicenseGradlePlugin.getLicenseWhitelistParameter(project)
+
+    @Internal
+    final Provider<LicenseRegistryService> licenseRegistryService = LicenseRegistryService.register(project)
+
     static File getWorkingDir(Project project) { return project.node.nodeProjectDir.get().asFile }
 
+    @Internal
+    final Provider<File> workingDir = getWorkingDirProvider(project)
+
+    @Internal
+    final Provider<String> npxExecutable = getNpxExecutableProvider(project)
+
+    @Internal
+    final Provider<String> envPath = getEnvPathProvider(project)
+
     @Input
     //  only show production dependencies.
     boolean production = true
@@ -125,49 +144,42 @@ class ProcessNodeLicensesTask extends DefaultTask {
     @Internal
     LicenseRegistryClient getLicenseRegistry() {
         return licenseRegistryGitRepository ?
-                new LicenseRegistryClient(licenseRegistryGitRepository) : null
+                licenseRegistryService.get().getClient(licenseRegistryGitRepository) : null
     }
 
     @Internal
-    ArrayList<String> getLicenseRegistryWhiteList() {
-        return licenseRegistry?.getFileContent(
-                LicenseGradlePlugin.getLicenseWhitelistParameter(project)
-        )?.split("[$LICENSE_REGISTRY_SEPARATOR]")
-    }
+    final Provider<LicenseRegistryIndex> licenseRegistryIndex = getLicenseRegistryIndexProvider(
+            licenseRegistryService, licenseRegistryGitRepository, licenseWhitelistFile)
 
     @Internal
-    LinkedHashMap<String, String> getLicenseRegistryAliases() {
-        LinkedHashMap<String, String> aliases = [:]
-        licenseRegistry?.getFileContent("merges.txt")?.eachLine {
-            if (it.size()) {
-                List<String> a = it.split("[$LICENSE_REGISTRY_SEPARATOR]")
-                aliases[a[0]] = a.join(NODE_LIST_SEPARATOR)
-            }
-        }
-        return aliases
-    }
+    final Provider<List<String>> licenseRegistryWhiteList = licenseRegistryIndex.map { it.whitelist }
 
     @Internal
-    Properties getLicenseFileList() {
-        def text = licenseRegistry?.getFileContent("licenses.properties")
-        Properties p = new Properties()
-        p.load(new StringReader(text))
-        return p
+    final Provider<Map<String, String>> licenseRegistryAliases = licenseRegistryIndex.map { index ->
+        index.aliases.collectEntries { canonical, aliases -> [canonical, aliases.join(NODE_LIST_SEPARATOR)] }
     }
 
+    @Internal
+    final Provider<Map<String, String>> licenseFileList = licenseRegistryIndex.map { it.licenseFiles }
+
     String getAllowedLicensesWithAliases(String licenses) {
-        def aliases = licenseRegistryAliases
-        return licenses?.split(NODE_LIST_SEPARATOR)?.collect { aliases.get(it, it) }?.join(NODE_LIST_SEPARATOR)
+        if (!licenses) {
+            return null
+        }
+        def aliases = licenseRegistryAliases.getOrElse([:])
+        return licenses.split(NODE_LIST_SEPARATOR).collect { aliases.get(it, it) }.join(NODE_LIST_SEPARATOR)
     }
 
     @Internal
     String getDefaultAllowedLicenses() {
-        return licenseRegistryWhiteList?.join(NODE_LIST_SEPARATOR)
+        return licenseRegistryWhiteList.getOrNull()?.join(NODE_LIST_SEPARATOR)
     }
 
     @Input
+    @Optional
     // [list] fail (exit with code 1) on the first occurrence of the licenses not in the semicolon-separated list
-    String onlyAllow = getAllowedLicensesWithAliases(getDefaultAllowedLicenses())
+    final Property<String> onlyAllow = project.objects.property(String)
+            .convention(project.provider { getAllowedLicensesWithAliases(getDefaultAllowedLicenses()) })
 
     @OutputDirectory
     File outDir = project.file(getLicensesRelativePath("${project.buildDir}/licenses"))
@@ -191,10 +203,32 @@ class ProcessNodeLicensesTask extends DefaultTask {
                 System.env.Path
     }
 
+    private static Provider<File> getWorkingDirProvider(Project project) {
+        return project.provider { getWorkingDir(project) }
+    }
+
+    private static Provider<String> getNpxExecutableProvider(Project project) {
+        return project.provider { new File(getNodeBinDir(project), isWindows() ? 'npx.cmd' : 'npx').path }
+    }
+
+    private static Provider<String> getEnvPathProvider(Project project) {
+        return project.provider { getEnvPath(project) }
+    }
+
+    private static Provider<LicenseRegistryIndex> getLicenseRegistryIndexProvider(Provider<LicenseRegistryService> service,
+                                                                                 String gitRepository,
+                                                                                 String whitelistFile) {
+        return service.map { gitRepository ? it.getClient(gitRepository).getIndex(whitelistFile) : null }
+    }
+
     ProcessNodeLicensesTask() {
         description = DESCRIPTION
+        usesService(licenseRegistryService)
     }
 
+    @Inject
+    protected abstract ExecOperations getExecOperations()
+
     String nodeFile(String f) {
         return f.replace('\\', '/')
     }
@@ -204,72 +238,104 @@ class ProcessNodeLicensesTask extends DefaultTask {
     }
 
     def runLicenseChecker(File workDir, File outFile) {
-        NpxTask npx = project.tasks.('nodeLicenseCheckerProcess')
-        npx.with {
-            environment['PATH'] = getEnvPath(project)
-            command.set('license-checker')
-            if (production) args.addAll("--production")
-            if (development) args.addAll("--development")
-            if (unknown) args.addAll("--unknown")
-            if (onlyunknown) args.addAll("--onlyunknown")
-            if (csvComponentPrefix) args.addAll("--csvComponentPrefix")
-            if (customPath) args.addAll("--customPath")
-            if (direct) args.addAll("--direct")
-            if (json) args.addAll("--json")
-            if (csv) args.addAll("--csv")
-            if (onlyAllow) args.addAll('--onlyAllow', onlyAllow)
-            if (excludePrivatePackages) args.addAll("--excludePrivatePackages")
-            if (packages) args.addAll("--packages", packages)
-            if (excludePackages) args.addAll("--excludePackages", excludePackages)
-            if (exclude) args.addAll("--exclude", exclude)
-            if (failOn) args.addAll("--failOn", failOn)
-            if (summary) args.addAll("--summary")
-            if (relativeLicensePath) args.addAll("--relativeLicensePath")
-            args.addAll('--out', nodeFile(outFile))
-            args.addAll("--start", nodeFile(workDir))
-            return exec()
+        List<String> args = ['license-checker']
+        if (production) args.addAll("--production")
+        if (development) args.addAll("--development")
+        if (unknown) args.addAll("--unknown")
+        if (onlyunknown) args.addAll("--onlyunknown")
+        if (csvComponentPrefix) args.addAll("--csvComponentPrefix")
+        if (customPath) args.addAll("--customPath")
+        if (direct) args.addAll("--direct")
+        if (json) args.addAll("--json")
+        if (csv) args.addAll("--csv")
+        if (onlyAllow.getOrNull()) args.addAll('--onlyAllow', onlyAllow.get())
+        if (excludePrivatePackages) args.addAll("--excludePrivatePackages")
+        if (packages) args.addAll("--packages", packages)
+        if (excludePackages) args.addAll("--excludePackages", excludePackages)
+        if (exclude) args.addAll("--exclude", exclude)
+        if (failOn) args.addAll("--failOn", failOn)
+        if (summary) args.addAll("--summary")
+        if (relativeLicensePath) args.addAll("--relativeLicensePath")
+        args.addAll('--out', nodeFile(outFile))
+        args.addAll("--start", nodeFile(workDir))
+        String executable = npxExecutable.get()
+        String path = envPath.get()
+        return execOperations.exec {
+            it.executable = executable
+            it.args = args
+            it.environment('PATH', path)
+            it.workingDir = workDir
         }
     }
 
     @TaskAction
     void execute() {
-        def workingDir = getWorkingDir(project)
-        File jsonFile = project.file("$workingDir/${outFileName}.json")
+        def workingDir = this.workingDir.get()
+        File jsonFile = new File(workingDir, "${outFileName}.json")
         runLicenseChecker(workingDir, jsonFile)
         File licenseFile = new File(outDir, "${outFileName}.txt")
         saveLicenses(workingDir, jsonFile, outDir, licenseFile)
     }
 
-    boolean fileExistByPattern(File dir, String filePattern) {
+    /**
+     * Checks whether a file name matches the license pattern, {@code *} and {@code ?} are wildcards.
+     */
+    boolean fileExistByPattern(Set<String> fileNames, String filePattern) {
         if (filePattern.matches('.*[*?].*')) {
-            return new FileNameFinder().getFileNames(dir.path, filePattern).size() > 0
+            def pattern = ~filePattern.split('((?<=[*?])|(?=[*?]))').collect {
+                it == '*' ? '[^/]*' : it == '?' ? '[^/]' : java.util.regex.Pattern.quote(it)
+            }.join()
+            return fileNames.any { pattern.matcher(it).matches() }
         } else return false
     }
 
+    /**
+     * Resolves the canonical name of a license through the inverted alias index of the registry,
+     * every distinct license value is resolved once per report.
+     */
+    protected String getCanonicalName(LicenseRegistryIndex index, Map<String, String> canonicalNames, String license) {
+        if (index == null || license == null) {
+            return null
+        }
+        if (!canonicalNames.containsKey(license)) {
+            String canonicalName = index.getCanonicalName(license)
+            if (canonicalName) {
+                logger.debug("Find alias '${canonicalName}' of license '${license}'")
+            }
+            canonicalNames.put(license, canonicalName)
+        }
+        return canonicalNames.get(license)
+    }
+
     def saveLicenses(File workDir, File jsonFile, File licenseDir, File mainLicenseFile) {
-        def dependencies = []
-        final Properties fileList = licenseFileList
-        def listAliases = licenseRegistryAliases
-        if (json)
+        final Map<String, String> fileList = licenseFileList.getOrElse([:])
+        final LicenseRegistryIndex index = licenseRegistryIndex.getOrNull()
+        final Map<String, String> canonicalNames = [:]
         //name:{licenses:,repository:,publisher:,url:,path:,licenseFile:}
-            new groovy.json.JsonSlurper().parse(jsonFile).each { k, v ->
+        Map packages = json ? new groovy.json.JsonSlurper().parse(jsonFile) as Map : [:]
+        // License files of the output directory, the files written by the report are added as they are written
+        final Set<String> licenseFiles = (licenseDir.list() ?: new String[0]).toList().toSet()
+        licenseRegistry?.prefetch(packages.values().collect {
+            fileList.get(getCanonicalName(index, canonicalNames, it.licenses as String) ?: it.licenses as String)
+        }.findAll().toSet())
+        mainLicenseFile.withWriter { writer ->
+            writer << "The product includes a number of subcomponents with separate copyright notices and license terms.$EOL" +
+                    "Your use of the source code for the these subcomponents is subject to the terms and conditions " +
+                    "of the following licenses located in files in licenses folder$EOL$EOL" +
+                    (packages ? "Lists of ${packages.size()} third-party dependencies.$EOL"
+                            : "The project has no dependencies.$EOL")
+            packages.each { k, v ->
                 def module = k.replace('/', ' ').replaceAll('(@\\d.*|@)', '')
                 def text = "(${v.licenses}) ${module} ($k - ${v.repository})"
-                def alias = null
-                for (aliases in listAliases) {
-                    if (v.licenses in aliases) {
-                        logger.debug("Find alias '${aliases[0]}' of license '${v.licenses}'")
-                        alias = aliases[0]
-                        break
-                    }
-                }
-                if (alias) {
+                def alias = getCanonicalName(index, canonicalNames, v.licenses as String)
+                if (alias && alias != v.licenses) {
                     text = "($alias) " + text
                 }
-                dependencies.add(text)
+                writer << "     $text$EOL"
                 String license = alias ?: v.licenses
-                File licenseFile = new File("${licenseDir}/${license}.txt")
-                if (!licenseFile.exists() && !fileExistByPattern(licenseDir, license)) {
+                String licenseFileName = "${license}.txt"
+                File licenseFile = new File(licenseDir, licenseFileName)
+                if (!licenseFiles.contains(licenseFileName) && !fileExistByPattern(licenseFiles, license)) {
                     def textLicense = null
                     if (fileList.containsKey(license)) {
                         textLicense = licenseRegistry?.getFileContent(fileList.get(license))
@@ -277,19 +343,14 @@ class ProcessNodeLicensesTask extends DefaultTask {
                         logger.warn("Standart license text not found for '${license}'")
                         textLicense = new File(workDir, v.licenseFile as String).text
                     }
-                    if (textLicense)
+                    if (textLicense) {
                         licenseFile.text = textLicense
-                    else
+                        licenseFiles.add(licenseFileName)
+                    } else
                         logger.error("License text not found for '${license}'")
                 }
             }
-        def text = "The product includes a number of subcomponents with separate copyright notices and license terms.$EOL" +
-                "Your use of the source code for the these subcomponents is subject to the terms and conditions " +
-                "of the following licenses located in files in licenses folder$EOL$EOL" +
-                (dependencies ? "Lists of ${dependencies.size()} third-party dependencies.$EOL"
-                        : "The project has no dependencies.$EOL")
-        dependencies.each { text += "     $it$EOL" }
-        mainLicenseFile.text = text
+        }
     }
 
 }
\ No newline at end of file
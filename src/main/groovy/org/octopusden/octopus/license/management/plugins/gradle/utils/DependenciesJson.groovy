@@ -0,0 +1,239 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import groovy.json.JsonException
+import groovy.json.JsonLexer
+import groovy.json.JsonOutput
+import groovy.json.JsonToken
+import groovy.json.JsonTokenType
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.function.Consumer
+
+/**
+ * Dependencies list file format: a pretty printed JSON array of {@link CanonicalGAV} records.
+ * The file is written and read record by record, neither its text nor its JSON tree is kept in memory.
+ */
+class DependenciesJson {
+    private static final String INDENT = "    "
+
+    private DependenciesJson() {
+    }
+
+    /**
+     * Writes the records one by one through a buffered writer, the JSON text of the whole list is never built.
+     */
+    static void write(File file, Iterable<CanonicalGAV> dependencies) {
+        file.parentFile?.mkdirs()
+        Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8).withCloseable { Writer writer ->
+            write(writer, dependencies)
+        }
+    }
+
+    static void write(Writer writer, Iterable<CanonicalGAV> dependencies) {
+        def iterator = dependencies.iterator()
+        if (!iterator.hasNext()) {
+            writer.write("[]")
+            return
+        }
+        writer.write("[\n")
+        writeDependency(writer, iterator.next())
+        while (iterator.hasNext()) {
+            writer.write(",\n")
+            writeDependency(writer, iterator.next())
+        }
+        writer.write("\n]")
+    }
+
+    /**
+     * Reads the records one by one with a pull parser and passes every record to {@code consumer}.
+     * Equal exclude rule lists of the file are shared. Unknown fields are skipped.
+     *
+     * @param readUsages whether the usages have to be read, they are skipped otherwise
+     */
+    static void read(File file, boolean readUsages, Consumer<CanonicalGAV> consumer) {
+        Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8).withCloseable { Reader reader ->
+            read(reader, readUsages, consumer)
+        }
+    }
+
+    static void read(Reader reader, boolean readUsages, Consumer<CanonicalGAV> consumer) {
+        def lexer = new JsonLexer(reader)
+        Map<List<MavenExcludeRule>, List<MavenExcludeRule>> sharedRules = new HashMap<>()
+        Map<DependencyUsage, DependencyUsage> sharedUsages = new HashMap<>()
+        expect(lexer.nextToken(), JsonTokenType.OPEN_BRACKET)
+        def token = lexer.nextToken()
+        while (!isType(token, JsonTokenType.CLOSE_BRACKET)) {
+            if (isType(token, JsonTokenType.COMMA)) {
+                token = lexer.nextToken()
+            }
+            expect(token, JsonTokenType.OPEN_CURLY)
+            consumer.accept(readDependency(lexer, readUsages, sharedRules, sharedUsages))
+            token = lexer.nextToken()
+        }
+    }
+
+    private static CanonicalGAV readDependency(JsonLexer lexer, boolean readUsages,
+                                               Map<List<MavenExcludeRule>, List<MavenExcludeRule>> sharedRules,
+                                               Map<DependencyUsage, DependencyUsage> sharedUsages) {
+        def gav = new CanonicalGAV()
+        readFields(lexer) { String name ->
+            switch (name) {
+                case "group": gav.group = readString(lexer); break
+                case "artifact": gav.artifact = readString(lexer); break
+                case "version": gav.version = readString(lexer); break
+                case "classifier": gav.classifier = readString(lexer); break
+                case "extension": gav.extension = readString(lexer); break
+                case "excludeRules":
+                    def rules = readObjects(lexer) { Map<String, String> fields ->
+                        new MavenExcludeRule(group: fields.group, artifact: fields.artifact)
+                    }
+                    gav.excludeRules = rules == null ? null : (sharedRules.putIfAbsent(rules, rules) ?: rules)
+                    break
+                case "usages":
+                    if (readUsages) {
+                        gav.usages = readObjects(lexer) { Map<String, String> fields ->
+                            def usage = new DependencyUsage(fields.project, fields.configuration)
+                            sharedUsages.putIfAbsent(usage, usage) ?: usage
+                        } ?: []
+                    } else {
+                        skipValue(lexer, lexer.nextToken())
+                    }
+                    break
+                default: skipValue(lexer, lexer.nextToken())
+            }
+        }
+        return gav
+    }
+
+    /**
+     * Reads the fields of an object which opening brace is already read, {@code field} has to read the field value.
+     */
+    private static void readFields(JsonLexer lexer, Closure field) {
+        def token = lexer.nextToken()
+        while (!isType(token, JsonTokenType.CLOSE_CURLY)) {
+            if (isType(token, JsonTokenType.COMMA)) {
+                token = lexer.nextToken()
+            }
+            expect(token, JsonTokenType.STRING)
+            expect(lexer.nextToken(), JsonTokenType.COLON)
+            field.call(token.value as String)
+            token = lexer.nextToken()
+        }
+    }
+
+    /**
+     * Reads an array of objects with string fields.
+     */
+    private static <T> List<T> readObjects(JsonLexer lexer, Closure<T> factory) {
+        def token = lexer.nextToken()
+        if (isType(token, JsonTokenType.NULL)) {
+            return null
+        }
+        expect(token, JsonTokenType.OPEN_BRACKET)
+        List<T> objects = new ArrayList<>()
+        token = lexer.nextToken()
+        while (!isType(token, JsonTokenType.CLOSE_BRACKET)) {
+            if (isType(token, JsonTokenType.COMMA)) {
+                token = lexer.nextToken()
+            }
+            expect(token, JsonTokenType.OPEN_CURLY)
+            Map<String, String> fields = new HashMap<>()
+            readFields(lexer) { String name -> fields.put(name, readString(lexer)) }
+            objects.add(factory.call(fields))
+            token = lexer.nextToken()
+        }
+        return objects
+    }
+
+    private static String readString(JsonLexer lexer) {
+        def token = lexer.nextToken()
+        if (isType(token, JsonTokenType.NULL)) {
+            return null
+        }
+        expect(token, JsonTokenType.STRING)
+        return token.value as String
+    }
+
+    private static void skipValue(JsonLexer lexer, JsonToken token) {
+        if (isType(token, JsonTokenType.OPEN_CURLY)) {
+            readFields(lexer) { String name -> skipValue(lexer, lexer.nextToken()) }
+        } else if (isType(token, JsonTokenType.OPEN_BRACKET)) {
+            token = lexer.nextToken()
+            while (!isType(token, JsonTokenType.CLOSE_BRACKET)) {
+                if (!isType(token, JsonTokenType.COMMA)) {
+                    skipValue(lexer, token)
+                }
+                token = lexer.nextToken()
+            }
+        }
+    }
+
+    private static boolean isType(JsonToken token, JsonTokenType type) {
+        if (token == null) {
+            throw new JsonException("Unexpected end of the dependencies list, expected ${type}")
+        }
+        return token.type == type
+    }
+
+    private static void expect(JsonToken token, JsonTokenType type) {
+        if (!isType(token, type)) {
+            throw new JsonException("Unexpected token ${token}, expected ${type}")
+        }
+    }
+
+    private static void writeDependency(Writer writer, CanonicalGAV gav) {
+        String indent = INDENT * 2
+        writer.write("${INDENT}{\n")
+        writeField(writer, indent, "group", gav.group)
+        writeField(writer, indent, "artifact", gav.artifact)
+        writeField(writer, indent, "version", gav.version)
+        writeField(writer, indent, "classifier", gav.classifier)
+        writeField(writer, indent, "extension", gav.extension)
+        writer.write("${indent}\"excludeRules\": ")
+        writeObjects(writer, indent, gav.excludeRules) { MavenExcludeRule rule, String objectIndent ->
+            writeField(writer, objectIndent, "group", rule.group)
+            writeLastField(writer, objectIndent, "artifact", rule.artifact)
+        }
+        writer.write(",\n${indent}\"usages\": ")
+        writeObjects(writer, indent, gav.usages) { DependencyUsage usage, String objectIndent ->
+            writeField(writer, objectIndent, "project", usage.project)
+            writeLastField(writer, objectIndent, "configuration", usage.configuration)
+        }
+        writer.write("\n${INDENT}}")
+    }
+
+    private static <T> void writeObjects(Writer writer, String indent, List<T> objects, Closure fields) {
+        if (objects == null) {
+            writer.write("null")
+            return
+        }
+        if (objects.isEmpty()) {
+            writer.write("[]")
+            return
+        }
+        String objectIndent = indent + INDENT
+        writer.write("[\n")
+        objects.eachWithIndex { T object, int index ->
+            if (index > 0) {
+                writer.write(",\n")
+            }
+            writer.write("${objectIndent}{\n")
+            fields.call(object, objectIndent + INDENT)
+            writer.write("\n${objectIndent}}")
+        }
+        writer.write("\n${indent}]")
+    }
+
+    private static void writeField(Writer writer, String indent, String name, String value) {
+        writeLastField(writer, indent, name, value)
+        writer.write(",\n")
+    }
+
+    private static void writeLastField(Writer writer, String indent, String name, String value) {
+        writer.write("${indent}\"${name}\": ${value == null ? "null" : JsonOutput.toJson(value)}")
+    }
+}
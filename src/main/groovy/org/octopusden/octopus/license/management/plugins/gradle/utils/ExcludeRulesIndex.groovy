@@ -0,0 +1,54 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.ModuleDependency
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule
+
+/**
+ * Exclude rules of the dependencies declared by a configuration indexed by module, built once per configuration.
+ * The first declared dependency of a module wins. Equal rule lists are shared and immutable,
+ * so they must not be modified by callers.
+ */
+class ExcludeRulesIndex {
+    public static final List<MavenExcludeRule> EXCLUDE_ALL =
+            Collections.unmodifiableList([new MavenExcludeRule(group: "*", artifact: "*")])
+
+    private final boolean transitive
+    private final Map<String, List<MavenExcludeRule>> excludeRules = new HashMap<>()
+
+    ExcludeRulesIndex(Configuration configuration) {
+        transitive = configuration.transitive
+        if (!transitive) {
+            return
+        }
+        Map<List<MavenExcludeRule>, List<MavenExcludeRule>> sharedRules = new HashMap<>()
+        sharedRules.put(EXCLUDE_ALL, EXCLUDE_ALL)
+        configuration.allDependencies.withType(ModuleDependency).each { ModuleDependency dependency ->
+            String key = getKey(dependency.group, dependency.name)
+            if (excludeRules.containsKey(key)) {
+                return
+            }
+            List<MavenExcludeRule> rules = !dependency.transitive ? EXCLUDE_ALL :
+                    dependency.excludeRules.collect { rule ->
+                        new MavenExcludeRule(group: rule.group ?: "*", artifact: rule.module ?: "*")
+                    }
+            List<MavenExcludeRule> shared = sharedRules.get(rules)
+            if (shared == null) {
+                shared = Collections.unmodifiableList(rules)
+                sharedRules.put(shared, shared)
+            }
+            excludeRules.put(key, shared)
+        }
+    }
+
+    /**
+     * @return exclude rules of the module or {@code null} if the module is not declared by the configuration
+     */
+    List<MavenExcludeRule> get(String group, String name) {
+        return transitive ? excludeRules.get(getKey(group, name)) : EXCLUDE_ALL
+    }
+
+    private static String getKey(String group, String name) {
+        return "$group:$name"
+    }
+}
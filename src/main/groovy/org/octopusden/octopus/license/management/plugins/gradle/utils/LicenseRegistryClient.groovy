@@ -1,47 +1,170 @@
 package org.octopusden.octopus.license.management.plugins.gradle.utils
 
-import com.platformlib.process.api.ProcessInstance
-import com.platformlib.process.configurator.ProcessOutputConfigurator
-import com.platformlib.process.local.factory.LocalProcessBuilderFactory
+import org.eclipse.jgit.lib.Constants
+import org.eclipse.jgit.lib.ObjectId
+import org.eclipse.jgit.lib.Repository
+import org.eclipse.jgit.revwalk.RevWalk
+import org.eclipse.jgit.treewalk.TreeWalk
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
-class LicenseRegistryClient {
-    private String vcsUrl
-    private File repo = null
-    private final Logger LOGGER = LoggerFactory.getLogger(LicenseRegistryClient.class);
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
 
-    LicenseRegistryClient(String vcsUrl) {
-        this.vcsUrl = vcsUrl
-    }
+/**
+ * Reads license registry files straight from the git object database of the registry copy.
+ * All files are read from the same registry revision, resolved on the first access.
+ * For a partial registry copy missing files are fetched on the first access or in batches by {@link #prefetch}.
+ */
+class LicenseRegistryClient implements Closeable {
+    public static final String ALIASES_FILE = "merges.txt"
+    public static final String FILE_LIST_FILE = "licenses.properties"
 
-    private File getCopy() {
-        File dir = File.createTempDir()
-        dir.deleteOnExit()
-        final ProcessInstance processInstance = LocalProcessBuilderFactory
-                .newLocalProcessBuilder()
-                .logger(configuration -> configuration.logger(LOGGER))
-                .processInstance(ProcessOutputConfigurator::unlimited)
-                .command("git")
-                .build()
-                .execute("clone", "--depth=1", vcsUrl, dir)
-                .toCompletableFuture()
-                .join()
-        if (processInstance.getExitCode() != 0) {
-            LOGGER.error("The git clone command stdout: {}", String.join("\n", processInstance.getStdOut()));
-            LOGGER.error("The git clone command stderr: {}", String.join("\n", processInstance.getStdErr()));
-            throw new IllegalStateException("Unable to clone git repository " + dir);
-        }
-        return dir
+    private static final String INDEX_FILE_PREFIX = "index-"
+    private static final String INDEX_FILE_SUFFIX = ".bin"
+
+    private final Logger LOGGER = LoggerFactory.getLogger(LicenseRegistryClient.class)
+
+    private final LicenseRegistryMirror mirror
+    private final Map<String, LicenseRegistryIndex> indexes = new ConcurrentHashMap<>()
+    private ObjectId revision = null
+    private ObjectId tree = null
+
+    LicenseRegistryClient(LicenseRegistryMirror mirror) {
+        this.mirror = mirror
     }
 
     String getFileContent(String file) {
         if (!file) {
             return ""
         }
-        if (!repo) {
-            repo = getCopy()
+        prefetch([file])
+        return mirror.read { Repository repository ->
+            TreeWalk treeWalk = TreeWalk.forPath(repository, file, getTree(repository))
+            if (treeWalk == null) {
+                throw new FileNotFoundException("File '$file' not found in license registry")
+            }
+            try {
+                return new String(repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).bytes, StandardCharsets.UTF_8)
+            } finally {
+                treeWalk.close()
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled index of the registry revision.
+     * The index is stored next to the registry copy and reused by later builds while the index files are unchanged.
+     *
+     * @param whitelistFile registry file with the allowed licenses
+     */
+    LicenseRegistryIndex getIndex(String whitelistFile) {
+        return indexes.computeIfAbsent(whitelistFile) { loadIndex(it) }
+    }
+
+    private LicenseRegistryIndex loadIndex(String whitelistFile) {
+        List<String> files = [whitelistFile, ALIASES_FILE, FILE_LIST_FILE]
+        Map<String, ObjectId> blobs = mirror.read { Repository repository -> resolveBlobs(repository, files) }
+        String sourceHash = MessageDigest.getInstance("SHA-1")
+                .digest(files.collect { "$it:${blobs[it]?.name()}" }.join("\n").getBytes(StandardCharsets.UTF_8))
+                .encodeHex()
+                .toString()
+        File indexFile = new File(mirror.directory, INDEX_FILE_PREFIX + revision.name() + INDEX_FILE_SUFFIX)
+        if (indexFile.exists()) {
+            try {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))
+                try {
+                    LicenseRegistryIndex index = LicenseRegistryIndex.read(input)
+                    if (index.sourceHash == sourceHash) {
+                        LOGGER.debug("Use license registry index {}", indexFile)
+                        return index
+                    }
+                } finally {
+                    input.close()
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read license registry index {}", indexFile, e)
+            }
+        }
+        prefetch(files)
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse(sourceHash,
+                getFileContent(whitelistFile), getFileContent(ALIASES_FILE), getFileContent(FILE_LIST_FILE))
+        storeIndex(indexFile, index)
+        return index
+    }
+
+    private void storeIndex(File indexFile, LicenseRegistryIndex index) {
+        File tmp = File.createTempFile(INDEX_FILE_PREFIX, ".tmp", indexFile.parentFile)
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+            try {
+                index.write(output)
+            } finally {
+                output.close()
+            }
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            indexFile.parentFile.listFiles()?.findAll {
+                it.name.startsWith(INDEX_FILE_PREFIX) && it.name.endsWith(INDEX_FILE_SUFFIX) && it != indexFile
+            }?.each { it.delete() }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store license registry index {}", indexFile, e)
+        } finally {
+            tmp.delete()
         }
-        return new File(repo, file).text
+    }
+
+    /**
+     * Fetches the given files of a partial registry copy which are not fetched yet, does nothing for a full copy.
+     */
+    void prefetch(Collection<String> files) {
+        if (!mirror.partial || !files) {
+            return
+        }
+        List<ObjectId> missing = mirror.read { Repository repository ->
+            resolveBlobs(repository, files).values().findAll { !repository.objectDatabase.has(it) }
+        }
+        mirror.fetchObjects(missing)
+    }
+
+    private Map<String, ObjectId> resolveBlobs(Repository repository, Collection<String> files) {
+        Map<String, ObjectId> blobs = [:]
+        TreeWalk treeWalk = new TreeWalk(repository)
+        try {
+            treeWalk.addTree(getTree(repository))
+            treeWalk.recursive = true
+            treeWalk.filter = PathFilterGroup.createFromStrings(files.toSet())
+            while (treeWalk.next()) {
+                blobs[treeWalk.pathString] = treeWalk.getObjectId(0)
+            }
+        } finally {
+            treeWalk.close()
+        }
+        return blobs
+    }
+
+    private synchronized ObjectId getTree(Repository repository) {
+        if (tree == null) {
+            ObjectId head = repository.resolve(LicenseRegistryMirror.REGISTRY_REF)
+            if (head == null) {
+                throw new IllegalStateException("License registry revision is not fetched")
+            }
+            RevWalk revWalk = new RevWalk(repository)
+            try {
+                revision = head.copy()
+                tree = revWalk.parseCommit(head).tree.copy()
+            } finally {
+                revWalk.close()
+            }
+        }
+        return tree
+    }
+
+    @Override
+    void close() {
+        mirror.close()
     }
 }
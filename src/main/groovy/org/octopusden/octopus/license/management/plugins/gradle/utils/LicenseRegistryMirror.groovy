@@ -0,0 +1,343 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import com.platformlib.process.api.ProcessInstance
+import com.platformlib.process.configurator.ProcessOutputConfigurator
+import com.platformlib.process.local.factory.LocalProcessBuilderFactory
+import org.eclipse.jgit.api.FetchCommand
+import org.eclipse.jgit.api.Git
+import org.eclipse.jgit.lib.ObjectId
+import org.eclipse.jgit.lib.Repository
+import org.eclipse.jgit.lib.StoredConfig
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder
+import org.eclipse.jgit.transport.RefSpec
+import org.eclipse.jgit.transport.URIish
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.nio.channels.FileChannel
+import java.nio.channels.FileLock
+import java.nio.channels.OverlappingFileLockException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.security.MessageDigest
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persistent bare copy of a license registry repository kept in the Gradle user home.
+ * The copy is shared by all builds using the same Gradle user home: it is guarded by a file lock,
+ * refreshed by an incremental fetch at most once per refresh interval and removed when it has not been used
+ * for {@link #EVICTION_DAYS} days.
+ * Fetching and reading are done in-process with JGit, the git command is used only for transports JGit can not handle.
+ * The registry head is fetched only ({@code --depth=1}) by the git command and by JGit 6.3 and above.
+ * JGit 5.13, the last version running on Java 8 and the one the plugin depends on, does not support shallow fetches,
+ * so it fetches the full history once, the following fetches are incremental.
+ * <p>
+ * A partial copy contains commits and trees only, blobs are fetched on demand by {@link #fetchObjects}.
+ * Partial copies are maintained with the git command as JGit does not support partial clones.
+ */
+class LicenseRegistryMirror implements Closeable {
+    public static final long EVICTION_DAYS = 30
+    public static final String REGISTRY_REF = "refs/license-registry/head"
+
+    private static final String REPOSITORY = "repository.git"
+    private static final String LAST_REFRESH = ".last-refresh"
+    private static final String LAST_USED = ".last-used"
+    private static final String LOCK_SUFFIX = ".lock"
+    private static final long LOCK_RETRY_DELAY = 100
+    private static final RefSpec REGISTRY_REF_SPEC = new RefSpec("+HEAD:$REGISTRY_REF")
+    private static final String PARTIAL_KEY_SUFFIX = "#partial"
+    private static final String PROMISOR_REMOTE = "origin"
+    private static final int PARALLEL_FETCHES = 4
+    private static final boolean SHALLOW_FETCH_SUPPORTED = FetchCommand.methods.any { it.name == "setDepth" }
+
+    private final Logger LOGGER = LoggerFactory.getLogger(LicenseRegistryMirror.class)
+
+    private final String vcsUrl
+    private final File cacheDirectory
+    private final File entryDirectory
+    private final long refreshInterval
+    private final boolean offline
+    private final boolean partial
+    private FileChannel lockChannel = null
+    private Object lockFileKey = null
+    private Repository repository = null
+
+    LicenseRegistryMirror(File cacheDirectory, String vcsUrl, Duration refreshInterval, boolean offline, boolean partial) {
+        this.vcsUrl = vcsUrl
+        this.cacheDirectory = cacheDirectory
+        this.entryDirectory = new File(cacheDirectory, getKey(partial ? vcsUrl + PARTIAL_KEY_SUFFIX : vcsUrl))
+        this.refreshInterval = refreshInterval.toMillis()
+        this.offline = offline
+        this.partial = partial
+    }
+
+    static String getKey(String vcsUrl) {
+        return MessageDigest.getInstance("SHA-1")
+                .digest(vcsUrl.getBytes(StandardCharsets.UTF_8))
+                .encodeHex()
+                .toString()
+    }
+
+    /**
+     * Runs {@code action} against the registry repository, refreshing the copy first if needed.
+     * Other builds are prevented from updating the copy while the action is running.
+     */
+    synchronized <T> T read(Closure<T> action) {
+        if (repository == null) {
+            withLock(false) { refresh() }
+            repository = new FileRepositoryBuilder()
+                    .setGitDir(new File(entryDirectory, REPOSITORY))
+                    .setMustExist(true)
+                    .build()
+            evict()
+        }
+        return withLock(true) { action(repository) }
+    }
+
+    private void refresh() {
+        File gitDir = new File(entryDirectory, REPOSITORY)
+        File lastRefresh = new File(entryDirectory, LAST_REFRESH)
+        if (lastRefresh.exists() && new File(gitDir, "HEAD").exists()) {
+            long age = System.currentTimeMillis() - lastRefresh.lastModified()
+            if (offline || age < refreshInterval) {
+                LOGGER.debug("Use license registry copy {} refreshed {} ms ago", gitDir, age)
+            } else if (fetch(gitDir)) {
+                touch(lastRefresh)
+            } else {
+                LOGGER.warn("Unable to refresh license registry copy {}, the previously fetched content is used", gitDir)
+            }
+        } else {
+            gitDir.deleteDir()
+            Git git = Git.init().setBare(true).setGitDir(gitDir).setDirectory(gitDir).call()
+            try {
+                if (partial) {
+                    configurePromisorRemote(git.repository.config)
+                }
+            } finally {
+                git.close()
+            }
+            if (!fetch(gitDir)) {
+                gitDir.deleteDir()
+                throw new IllegalStateException("Unable to fetch git repository " + vcsUrl)
+            }
+            touch(lastRefresh)
+        }
+        touch(new File(entryDirectory, LAST_USED))
+    }
+
+    private void configurePromisorRemote(StoredConfig config) {
+        config.setInt("core", null, "repositoryformatversion", 1)
+        config.setString("extensions", null, "partialClone", PROMISOR_REMOTE)
+        config.setString("remote", PROMISOR_REMOTE, "url", vcsUrl)
+        config.setBoolean("remote", PROMISOR_REMOTE, "promisor", true)
+        config.setString("remote", PROMISOR_REMOTE, "partialclonefilter", "blob:none")
+        config.save()
+    }
+
+    private boolean fetch(File gitDir) {
+        if (partial) {
+            return git(gitDir, "fetch", "--depth=1", "--filter=blob:none", PROMISOR_REMOTE, REGISTRY_REF_SPEC.toString())
+        }
+        if (isJGitTransport()) {
+            try {
+                Git git = Git.open(gitDir)
+                try {
+                    def fetch = git.fetch().setRemote(vcsUrl).setRefSpecs(REGISTRY_REF_SPEC)
+                    if (SHALLOW_FETCH_SUPPORTED) {
+                        // A newer JGit resolved on the build script classpath fetches the registry head only
+                        fetch.setDepth(1)
+                    }
+                    fetch.call()
+                } finally {
+                    git.close()
+                }
+                return true
+            } catch (Exception e) {
+                LOGGER.error("Unable to fetch git repository {}", vcsUrl, e)
+                return false
+            }
+        }
+        return git(gitDir, "fetch", "--depth=1", vcsUrl, REGISTRY_REF_SPEC.toString())
+    }
+
+    boolean isPartial() {
+        return partial
+    }
+
+    /**
+     * @return directory of the registry copy where data derived from the registry can be kept
+     */
+    File getDirectory() {
+        return entryDirectory
+    }
+
+    /**
+     * Fetches missing blobs of a partial copy, splitting them into up to {@link #PARALLEL_FETCHES} concurrent requests.
+     * Other builds are prevented from using the copy while the blobs are written.
+     * Must not be called from a {@link #read} action.
+     */
+    synchronized void fetchObjects(Collection<ObjectId> objects) {
+        if (!objects) {
+            return
+        }
+        File gitDir = new File(entryDirectory, REPOSITORY)
+        int batchSize = (int) Math.ceil(objects.size() / (double) PARALLEL_FETCHES)
+        List<List<ObjectId>> batches = objects.toList().collate(batchSize)
+        LOGGER.info("Fetch {} license registry files in {} requests", objects.size(), batches.size())
+        withLock(false) {
+            ExecutorService executor = Executors.newFixedThreadPool(batches.size())
+            try {
+                def fetches = batches.collect { List<ObjectId> batch ->
+                    CompletableFuture.supplyAsync({
+                        git(gitDir, "-c", "fetch.negotiationAlgorithm=noop", "fetch", "--no-tags", "--no-write-fetch-head",
+                                "--filter=blob:none", PROMISOR_REMOTE, *batch.collect { it.name() })
+                    }, executor)
+                }
+                if (!fetches.every { it.join() }) {
+                    throw new IllegalStateException("Unable to fetch license registry files from " + vcsUrl)
+                }
+            } finally {
+                executor.shutdown()
+            }
+        }
+    }
+
+    private boolean isJGitTransport() {
+        String scheme = new URIish(vcsUrl).scheme
+        return scheme in ["http", "https", "file", "git"] || (scheme == null && new File(vcsUrl).exists())
+    }
+
+    private boolean git(File gitDir, String... args) {
+        if (!isGitInstalled()) {
+            throw new IllegalStateException("The git command is not found on PATH, it is required to fetch license registry "
+                    + vcsUrl + (partial ? " in partial fetch mode" : " over this transport, use an http, https, git or file URL otherwise"))
+        }
+        final ProcessInstance processInstance = LocalProcessBuilderFactory
+                .newLocalProcessBuilder()
+                .logger(configuration -> configuration.logger(LOGGER))
+                .processInstance(ProcessOutputConfigurator::unlimited)
+                .command("git")
+                .build()
+                .execute("--git-dir=$gitDir", *args)
+                .toCompletableFuture()
+                .join()
+        if (processInstance.getExitCode() != 0) {
+            LOGGER.error("The git fetch command stdout: {}", String.join("\n", processInstance.getStdOut()))
+            LOGGER.error("The git fetch command stderr: {}", String.join("\n", processInstance.getStdErr()))
+            LOGGER.error("Unable to fetch git repository {}", vcsUrl)
+            return false
+        }
+        return true
+    }
+
+    private static boolean isGitInstalled() {
+        return System.getenv("PATH")?.split(File.pathSeparator)?.any { String dir ->
+            ["git", "git.exe"].any { new File(dir, it).isFile() }
+        }
+    }
+
+    /**
+     * Removes copies of other registries which have not been used for {@link #EVICTION_DAYS} days together with their lock files.
+     * Copies locked by running builds are skipped.
+     */
+    private void evict() {
+        long threshold = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(EVICTION_DAYS)
+        cacheDirectory.listFiles()?.findAll {
+            it.isDirectory() && it != entryDirectory && new File(it, LAST_USED).lastModified() < threshold
+        }?.each { File entry ->
+            FileChannel channel = openLockChannel(entry)
+            try {
+                FileLock lock = channel.tryLock()
+                if (lock != null) {
+                    try {
+                        LOGGER.info("Remove unused license registry copy {}", entry)
+                        entry.deleteDir()
+                        // A build waiting for the removed lock file opens a new one, see withLock
+                        if (!getLockFile(entry).delete()) {
+                            LOGGER.debug("Unable to remove lock file of license registry copy {}", entry)
+                        }
+                    } finally {
+                        lock.release()
+                    }
+                }
+            } catch (OverlappingFileLockException ignored) {
+                // The copy is used by this JVM
+            } finally {
+                channel.close()
+            }
+        }
+    }
+
+    private <T> T withLock(boolean shared, Closure<T> action) {
+        FileLock lock = null
+        while (lock == null) {
+            if (lockChannel == null) {
+                entryDirectory.mkdirs()
+                lockChannel = openLockChannel(entryDirectory)
+                lockFileKey = readFileKey(getLockFile(entryDirectory))
+            }
+            try {
+                lock = lockChannel.lock(0L, Long.MAX_VALUE, shared)
+            } catch (OverlappingFileLockException ignored) {
+                // The same copy is locked by another class loader of this JVM
+                Thread.sleep(LOCK_RETRY_DELAY)
+                continue
+            }
+            if (isLockFileRemoved()) {
+                // The copy has been evicted by another build while waiting for the lock
+                lock.release()
+                lock = null
+                lockChannel.close()
+                lockChannel = null
+            }
+        }
+        try {
+            return action()
+        } finally {
+            lock.release()
+        }
+    }
+
+    private boolean isLockFileRemoved() {
+        try {
+            return readFileKey(getLockFile(entryDirectory)) != lockFileKey
+        } catch (NoSuchFileException ignored) {
+            return true
+        }
+    }
+
+    private static Object readFileKey(File file) {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes).fileKey()
+    }
+
+    private static File getLockFile(File entry) {
+        return new File(entry.parentFile, entry.name + LOCK_SUFFIX)
+    }
+
+    private static FileChannel openLockChannel(File entry) {
+        return FileChannel.open(getLockFile(entry).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+    }
+
+    private static void touch(File file) {
+        if (!file.exists()) {
+            file.createNewFile()
+        }
+        file.setLastModified(System.currentTimeMillis())
+    }
+
+    @Override
+    synchronized void close() {
+        repository?.close()
+        repository = null
+        lockChannel?.close()
+        lockChannel = null
+    }
+}
@@ -0,0 +1,300 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import groovy.io.FileType
+import org.gradle.api.Project
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier
+import org.gradle.api.artifacts.result.ComponentArtifactsResult
+import org.gradle.api.artifacts.result.ResolvedArtifactResult
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.gradle.maven.MavenModule
+import org.gradle.maven.MavenPomArtifact
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ModuleLicenses
+import org.octopusden.octopus.license.management.plugins.gradle.dto.PomLicense
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import org.w3c.dom.Node
+
+import javax.xml.parsers.DocumentBuilderFactory
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.function.Predicate
+import java.util.regex.Pattern
+
+/**
+ * Reads the licenses of modules from their POMs resolved by Gradle, so the POMs are taken from the Gradle module cache
+ * instead of being resolved by Maven again.
+ * <p>
+ * A POM without licenses inherits the licenses of the nearest parent POM declaring them. The POMs of the modules
+ * and then of every parent level are resolved by a single artifact resolution query, so Gradle fetches them together.
+ * Modules whose POMs or licenses can not be resolved, or whose licenses refer to unknown properties, are left out,
+ * their licenses are resolved by Maven.
+ */
+class PomLicenseResolver {
+    private static final Logger LOGGER = Logging.getLogger(PomLicenseResolver.class)
+
+    private static final String LICENSE_SUMMARY_FILE = "licenses.xml"
+    private static final String NO_URL = "no url defined"
+
+    /**
+     * @param keys modules, see {@link LicensesOutputSplitter#getKey(String, String, String)}
+     * @return licenses of the modules they are resolved for
+     */
+    static Map<String, ModuleLicenses> resolve(Project project, Collection<String> keys) {
+        Map<String, Map> poms = new HashMap<>()
+        Set<String> pending = new LinkedHashSet<>(keys)
+        try {
+            while (!pending.empty) {
+                def query = project.dependencies.createArtifactResolutionQuery()
+                pending.each { String key ->
+                    def coordinates = key.split(":", 3)
+                    query.forModule(coordinates[0], coordinates[1], coordinates[2])
+                }
+                def parents = new LinkedHashSet<String>()
+                query.withArtifacts(MavenModule, MavenPomArtifact).execute().resolvedComponents.each { ComponentArtifactsResult component ->
+                    def id = component.id as ModuleComponentIdentifier
+                    def pom = component.getArtifacts(MavenPomArtifact).find { it instanceof ResolvedArtifactResult } as ResolvedArtifactResult
+                    def model = pom != null ? readPom(pom.file) : null
+                    def key = LicensesOutputSplitter.getKey(id.group, id.module, id.version)
+                    poms.put(key, model)
+                    if (model != null && (model.licenses as List).empty && model.parent != null && !poms.containsKey(model.parent)) {
+                        parents.add(model.parent as String)
+                    }
+                }
+                pending.each { poms.putIfAbsent(it, null) }
+                pending = parents
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Unable to resolve POMs, licenses are resolved by Maven", e)
+        }
+
+        def licenses = new LinkedHashMap<String, ModuleLicenses>()
+        keys.each { String key ->
+            def module = getModuleLicenses(key, poms)
+            if (module != null) {
+                licenses.put(key, module)
+            }
+        }
+        LOGGER.info("Licenses of {} of {} modules are read from POMs", licenses.size(), keys.size())
+        return licenses
+    }
+
+    /**
+     * Selects the dependencies whose licenses are taken from POMs: all their transitive dependencies not of the excluded groups,
+     * as Maven excludes them, have licenses in POMs and the texts of these licenses are found.
+     *
+     * @param dependencies dependencies passed to Maven, see {@link LicensesOutputSplitter#getKey(String, String, String)}
+     * @param graph resolved dependency graph, see {@link TransitiveDependenciesJson}
+     * @param licenseTextFound whether the text of a license is found
+     * @param selectedLicenses receives the licenses of the selected dependencies and their transitive dependencies
+     * @return dependencies whose licenses are resolved by Maven
+     */
+    static Set<String> select(Collection<String> dependencies, Map<String, ModuleLicenses> pomLicenses,
+                              Map<String, ? extends Collection<String>> graph, Pattern excludedGroups,
+                              Predicate<String> licenseTextFound, Map<String, ModuleLicenses> selectedLicenses) {
+        def mavenDependencies = new LinkedHashSet<String>()
+        dependencies.each { String dependency ->
+            def modules = TransitiveDependenciesJson.closure(graph, [dependency]).findAll {
+                !excludedGroups.matcher(it.substring(0, it.indexOf(':'))).matches()
+            }
+            if (modules.every { String module -> pomLicenses.get(module)?.licenses?.every { licenseTextFound.test(it.name) } }) {
+                modules.each { selectedLicenses.put(it, pomLicenses.get(it)) }
+            } else {
+                mavenDependencies.add(dependency)
+            }
+        }
+        return mavenDependencies
+    }
+
+    private static ModuleLicenses getModuleLicenses(String key, Map<String, Map> poms) {
+        def coordinates = key.split(":", 3)
+        def model = poms.get(key)
+        if (model == null) {
+            return null
+        }
+        // The module POM followed by its resolved parent POMs
+        List<Map> chain = [model]
+        Set<String> visited = new HashSet<>([key])
+        while (chain.last().parent != null && visited.add(chain.last().parent as String) && poms.get(chain.last().parent) != null) {
+            chain.add(poms.get(chain.last().parent))
+        }
+        def licensed = chain.find { !(it.licenses as List).empty } ?: model
+        def url = model.url as String
+        def urlParent = url == null ? chain.find { it.url != null } : null
+        if (urlParent != null) {
+            // The URL is inherited with the module path appended
+            url = "${urlParent.url}/${coordinates[1]}".toString()
+        }
+        def properties = ["project.groupId": coordinates[0], "project.artifactId": coordinates[1], "project.version": coordinates[2],
+                          "groupId"        : coordinates[0], "artifactId": coordinates[1], "version": coordinates[2]]
+        def pomLicenses = (licensed.licenses as List<PomLicense>).collect {
+            new PomLicense(interpolate(it.name, properties), interpolate(it.url, properties))
+        }
+        def module = new ModuleLicenses(interpolate(model.name as String, properties) ?: coordinates[1],
+                interpolate(url, properties), pomLicenses)
+        if (pomLicenses.empty || pomLicenses.any { it.name == null || it.name.contains('${') || it.url?.contains('${') }
+                || module.name.contains('${') || module.url?.contains('${')) {
+            return null
+        }
+        return module
+    }
+
+    private static String interpolate(String value, Map<String, String> properties) {
+        if (value == null || !value.contains('${')) {
+            return value
+        }
+        return value.replaceAll(/\$\{([^}]+)}/) { List<String> match -> properties.get(match[1]) ?: match[0] }
+    }
+
+    /**
+     * @return name, URL, licenses and parent key of the POM, {@code null} if the POM can not be read
+     */
+    private static Map readPom(File file) {
+        try {
+            def factory = DocumentBuilderFactory.newInstance()
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true)
+            def project = factory.newDocumentBuilder().parse(file).documentElement
+            def parent = getChild(project, "parent")
+            def licenses = getChild(project, "licenses")
+            return [name    : LicensesOutputSplitter.getChildText(project, "name"),
+                    url     : LicensesOutputSplitter.getChildText(project, "url"),
+                    licenses: licenses == null ? [] : getChildren(licenses, "license").collect {
+                        new PomLicense(LicensesOutputSplitter.getChildText(it, "name"), LicensesOutputSplitter.getChildText(it, "url"))
+                    },
+                    parent  : parent == null ? null : LicensesOutputSplitter.getKey(LicensesOutputSplitter.getChildText(parent, "groupId"),
+                            LicensesOutputSplitter.getChildText(parent, "artifactId"), LicensesOutputSplitter.getChildText(parent, "version"))]
+        } catch (Exception e) {
+            LOGGER.info("Unable to read POM {}: {}", file, e.message)
+            return null
+        }
+    }
+
+    private static Element getChild(Element element, String name) {
+        def children = getChildren(element, name)
+        return children.empty ? null : children.first()
+    }
+
+    private static List<Element> getChildren(Element element, String name) {
+        def children = new ArrayList<Element>()
+        for (Node child = element.firstChild; child != null; child = child.nextSibling) {
+            if (child instanceof Element && name == child.nodeName) {
+                children.add(child as Element)
+            }
+        }
+        return children
+    }
+
+    /**
+     * @return registry file with the text of the license or of its canonical name, {@code null} if the registry has no text
+     */
+    static String getLicenseFile(LicenseRegistryIndex index, String license) {
+        def canonicalName = index.getCanonicalName(license)
+        return (canonicalName != null ? index.licenseFiles.get(canonicalName) : null) ?: index.licenseFiles.get(license)
+    }
+
+    /**
+     * @return licenses of the modules named by their canonical names in the license registry,
+     * so they are listed by the names the license Maven plugin writes
+     */
+    static Map<String, ModuleLicenses> toCanonicalNames(Map<String, ModuleLicenses> licenses, LicenseRegistryIndex index) {
+        return licenses.collectEntries(new LinkedHashMap<String, ModuleLicenses>()) { String key, ModuleLicenses module ->
+            [(key): new ModuleLicenses(module.name, module.url, module.licenses.collect { PomLicense license ->
+                new PomLicense(index.getCanonicalName(license.name) ?: license.name, license.url)
+            })]
+        }
+    }
+
+    /**
+     * Writes the texts of the licenses of the modules taken from the license registry to the output directory,
+     * the directory is created if Maven has not been run. A file written by Maven is kept.
+     *
+     * @return file names of the license texts by the license names, see {@link #writeLicenses}
+     */
+    static Map<String, String> writeLicenseTexts(File outputDirectory, Map<String, ModuleLicenses> licenses,
+                                                 LicenseRegistryClient registry, LicenseRegistryIndex index) {
+        outputDirectory.mkdirs()
+        def registryFiles = new TreeMap<String, String>()
+        licenses.values().each { ModuleLicenses module ->
+            module.licenses.each { registryFiles.put(it.name, getLicenseFile(index, it.name)) }
+        }
+        registry.prefetch(registryFiles.values().toSet())
+        registryFiles.values().toSet().each { String registryFile ->
+            def file = new File(outputDirectory, new File(registryFile).name)
+            if (!file.exists()) {
+                file.setText(registry.getFileContent(registryFile), StandardCharsets.UTF_8.name())
+            }
+        }
+        return registryFiles.collectEntries { String license, String registryFile -> [(license): new File(registryFile).name] }
+    }
+
+    /**
+     * Adds the licenses of the modules to the output of a license Maven run,
+     * to its third-party list and to its license summary. Modules listed by the Maven run already are skipped.
+     *
+     * @param licenseFiles files of the license texts in the output directory by the license names
+     */
+    static void writeLicenses(File outputDirectory, Map<String, ModuleLicenses> licenses, Map<String, String> licenseFiles = [:]) {
+        outputDirectory.mkdirs()
+        def thirdPartyFile = new File(outputDirectory, LicensesOutputSplitter.THIRD_PARTY_FILE)
+        List<String> lines = thirdPartyFile.exists() ?
+                Files.readAllLines(thirdPartyFile.toPath(), StandardCharsets.UTF_8).findAll { LicensesOutputSplitter.THIRD_PARTY_DEPENDENCY.matcher(it).find() } :
+                []
+        def listed = new HashSet<String>()
+        lines.each {
+            def matcher = LicensesOutputSplitter.THIRD_PARTY_DEPENDENCY.matcher(it)
+            matcher.find()
+            listed.add(LicensesOutputSplitter.getKey(matcher.group(1), matcher.group(2), matcher.group(3)))
+        }
+        licenses = licenses.findAll { String key, ModuleLicenses module -> !listed.contains(key) }
+        licenses.each { String key, ModuleLicenses module ->
+            lines.add("     ${module.licenses.collect { "(${it.name})" }.join(" ")} ${module.name} ($key - ${module.url ?: NO_URL})".toString())
+        }
+        LicensesOutputSplitter.writeThirdParty(thirdPartyFile.toPath(), lines)
+
+        File summaryFile = null
+        Document summary = null
+        outputDirectory.eachFileRecurse(FileType.FILES) { File file ->
+            if (summary == null && file.name.endsWith(".xml")) {
+                summary = LicensesOutputSplitter.readLicenseSummary(file.toPath())
+                summaryFile = file
+            }
+        }
+        if (summary == null) {
+            summary = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument()
+            summary.appendChild(summary.createElement("licenseSummary"))
+            summaryFile = new File(outputDirectory, LICENSE_SUMMARY_FILE)
+        }
+        def dependencies = getChild(summary.documentElement, "dependencies")
+        if (dependencies == null) {
+            dependencies = summary.documentElement.appendChild(summary.createElement("dependencies")) as Element
+        }
+        licenses.each { String key, ModuleLicenses module ->
+            def coordinates = key.split(":", 3)
+            def dependency = appendElement(dependencies, "dependency", null)
+            appendElement(dependency, "groupId", coordinates[0])
+            appendElement(dependency, "artifactId", coordinates[1])
+            appendElement(dependency, "version", coordinates[2])
+            def licensesElement = appendElement(dependency, "licenses", null)
+            module.licenses.each { PomLicense license ->
+                def licenseElement = appendElement(licensesElement, "license", null)
+                appendElement(licenseElement, "name", license.name)
+                if (license.url != null) {
+                    appendElement(licenseElement, "url", license.url)
+                }
+                if (licenseFiles.containsKey(license.name)) {
+                    appendElement(licenseElement, "file", licenseFiles.get(license.name))
+                }
+            }
+        }
+        LicensesOutputSplitter.writeXml(summary, summaryFile.toPath())
+    }
+
+    private static Element appendElement(Element parent, String name, String text) {
+        def element = parent.ownerDocument.createElement(name)
+        if (text != null) {
+            element.textContent = text
+        }
+        parent.appendChild(element)
+        return element
+    }
+}
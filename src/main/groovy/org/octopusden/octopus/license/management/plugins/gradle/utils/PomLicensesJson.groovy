@@ -0,0 +1,35 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ModuleLicenses
+import org.octopusden.octopus.license.management.plugins.gradle.dto.PomLicense
+
+/**
+ * Licenses read from the POMs of the dependencies as a JSON object keyed by {@code group:artifact:version}.
+ */
+class PomLicensesJson {
+
+    static void write(File file, Map<String, ModuleLicenses> licenses) {
+        def json = new TreeMap<String, Object>()
+        licenses.each { String key, ModuleLicenses module ->
+            json.put(key, [name    : module.name,
+                           url     : module.url,
+                           licenses: module.licenses.collect { [name: it.name, url: it.url] }])
+        }
+        file.parentFile.mkdirs()
+        file.setText(JsonOutput.prettyPrint(JsonOutput.toJson(json)), "UTF-8")
+    }
+
+    static Map<String, ModuleLicenses> read(File file) {
+        def licenses = new LinkedHashMap<String, ModuleLicenses>()
+        if (!file.exists()) {
+            return licenses
+        }
+        (new JsonSlurper().parse(file, "UTF-8") as Map<String, Map>).each { String key, Map module ->
+            licenses.put(key, new ModuleLicenses(module.name as String, module.url as String,
+                    (module.licenses as List<Map>).collect { new PomLicense(it.name as String, it.url as String) }))
+        }
+        return licenses
+    }
+}
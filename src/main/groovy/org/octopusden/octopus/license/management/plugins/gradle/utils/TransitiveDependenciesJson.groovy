@@ -0,0 +1,55 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+
+/**
+ * Resolved dependency graph of the modules as a JSON object: the direct dependencies of every module,
+ * modules are identified by {@code group:artifact:version}.
+ */
+class TransitiveDependenciesJson {
+
+    static void write(File file, Map<String, ? extends Collection<String>> dependencies) {
+        def json = new TreeMap<String, Object>()
+        dependencies.each { String key, Collection<String> children ->
+            json.put(key, new TreeSet<String>(children))
+        }
+        file.parentFile.mkdirs()
+        file.setText(JsonOutput.prettyPrint(JsonOutput.toJson(json)), "UTF-8")
+    }
+
+    static Map<String, Set<String>> read(File file) {
+        def dependencies = new LinkedHashMap<String, Set<String>>()
+        if (!file.exists()) {
+            return dependencies
+        }
+        (new JsonSlurper().parse(file, "UTF-8") as Map<String, List>).each { String key, List children ->
+            dependencies.put(key, new LinkedHashSet<String>(children as List<String>))
+        }
+        return dependencies
+    }
+
+    /**
+     * Adds the dependencies of {@code source} to {@code target}.
+     */
+    static void merge(Map<String, Set<String>> target, Map<String, ? extends Collection<String>> source) {
+        source.each { String key, Collection<String> children ->
+            target.computeIfAbsent(key) { new TreeSet<String>() }.addAll(children)
+        }
+    }
+
+    /**
+     * @return the modules and all modules they depend on directly or transitively
+     */
+    static Set<String> closure(Map<String, ? extends Collection<String>> dependencies, Collection<String> modules) {
+        def closure = new LinkedHashSet<String>()
+        def queue = new ArrayDeque<String>(modules)
+        while (!queue.isEmpty()) {
+            def module = queue.poll()
+            if (closure.add(module)) {
+                dependencies.get(module)?.each { queue.add(it) }
+            }
+        }
+        return closure
+    }
+}
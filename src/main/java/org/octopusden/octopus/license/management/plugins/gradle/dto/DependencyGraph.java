@@ -0,0 +1,278 @@
+package org.octopusden.octopus.license.management.plugins.gradle.dto;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distinct dependencies with their usages, stored in primitive arrays.
+ * <p>
+ * Group, artifact, version, classifier and extension are interned into a string dictionary, exclude rule lists
+ * and usages are interned as well, so a dependency is a row of int identifiers with a cached hash.
+ * Dependencies are found through an open addressing table, equal coordinates and exclude rules give the same dependency.
+ * Dependencies are numbered in the order they are added, {@link ArtifactGAV} and {@link CanonicalGAV} records
+ * are created on demand.
+ */
+public final class DependencyGraph {
+    private static final int NULL = -1;
+    private static final int FIELDS = 6;
+
+    private final StringDictionary strings = new StringDictionary();
+    private final Map<List<MavenExcludeRule>, Integer> excludeRulesIds = new HashMap<>();
+    private final List<List<MavenExcludeRule>> excludeRules = new ArrayList<>();
+    private final Map<DependencyUsage, Integer> usageIds = new HashMap<>();
+    private final List<DependencyUsage> usages = new ArrayList<>();
+
+    // group, artifact, version, classifier, extension and exclude rules identifiers of every dependency
+    private int[] dependencies = new int[16 * FIELDS];
+    private int[] hashes = new int[16];
+    private int size;
+    // dependency number plus one, zero for a free slot
+    private int[] slots = new int[32];
+
+    // usages of a dependency are a linked list: first and last node of a dependency, usage and next node of a node
+    private int[] firstUsages = new int[16];
+    private int[] lastUsages = new int[16];
+    private int[] usageNodes = new int[16];
+    private int[] nextUsageNodes = new int[16];
+    private int usageNodeCount;
+
+    /**
+     * @return number of the dependency, the existing one if the dependency has been added already
+     */
+    public int add(String group, String artifact, String version, String classifier, String extension,
+                   List<MavenExcludeRule> excludeRules) {
+        int[] row = {strings.intern(group), strings.intern(artifact), strings.intern(version),
+                strings.intern(classifier), strings.intern(extension), internExcludeRules(excludeRules)};
+        int hash = Arrays.hashCode(row);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int dependency = slots[slot] - 1;
+            if (hashes[dependency] == hash && rowEquals(dependency, row)) {
+                return dependency;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == hashes.length) {
+            dependencies = Arrays.copyOf(dependencies, dependencies.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            firstUsages = Arrays.copyOf(firstUsages, firstUsages.length * 2);
+            lastUsages = Arrays.copyOf(lastUsages, lastUsages.length * 2);
+        }
+        int dependency = size++;
+        System.arraycopy(row, 0, dependencies, dependency * FIELDS, FIELDS);
+        hashes[dependency] = hash;
+        firstUsages[dependency] = NULL;
+        lastUsages[dependency] = NULL;
+        slots[slot] = dependency + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return dependency;
+    }
+
+    /**
+     * Adds the usage to the usages of the dependency, the usages keep the order they are added in.
+     */
+    public void addUsage(int dependency, DependencyUsage usage) {
+        Integer id = usageIds.get(usage);
+        if (id == null) {
+            id = usages.size();
+            usageIds.put(usage, id);
+            usages.add(usage);
+        }
+        if (usageNodeCount == usageNodes.length) {
+            usageNodes = Arrays.copyOf(usageNodes, usageNodes.length * 2);
+            nextUsageNodes = Arrays.copyOf(nextUsageNodes, nextUsageNodes.length * 2);
+        }
+        int node = usageNodeCount++;
+        usageNodes[node] = id;
+        nextUsageNodes[node] = NULL;
+        if (lastUsages[dependency] == NULL) {
+            firstUsages[dependency] = node;
+        } else {
+            nextUsageNodes[lastUsages[dependency]] = node;
+        }
+        lastUsages[dependency] = node;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getGroup(int dependency) {
+        return strings.get(dependencies[dependency * FIELDS]);
+    }
+
+    public String getArtifact(int dependency) {
+        return strings.get(dependencies[dependency * FIELDS + 1]);
+    }
+
+    public String getVersion(int dependency) {
+        return strings.get(dependencies[dependency * FIELDS + 2]);
+    }
+
+    public String getClassifier(int dependency) {
+        return strings.get(dependencies[dependency * FIELDS + 3]);
+    }
+
+    public String getExtension(int dependency) {
+        return strings.get(dependencies[dependency * FIELDS + 4]);
+    }
+
+    /**
+     * @return exclude rules of the dependency, equal lists are shared
+     */
+    public List<MavenExcludeRule> getExcludeRules(int dependency) {
+        int id = dependencies[dependency * FIELDS + 5];
+        return id == NULL ? null : excludeRules.get(id);
+    }
+
+    /**
+     * @return new list of the usages of the dependency, equal usages are shared
+     */
+    public List<DependencyUsage> getUsages(int dependency) {
+        List<DependencyUsage> result = new ArrayList<>();
+        for (int node = firstUsages[dependency]; node != NULL; node = nextUsageNodes[node]) {
+            result.add(usages.get(usageNodes[node]));
+        }
+        return result;
+    }
+
+    /**
+     * @return view of the dependencies in the order they are added, the records are created on access
+     */
+    public List<ArtifactGAV> getArtifacts() {
+        return new AbstractList<ArtifactGAV>() {
+            @Override
+            public ArtifactGAV get(int index) {
+                checkIndex(index);
+                return new ArtifactGAV(getGroup(index), getArtifact(index), getVersion(index), getClassifier(index),
+                        getExtension(index), getExcludeRules(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return view of the dependencies in the order they are added, the records with usages are created on access
+     */
+    public List<CanonicalGAV> getCanonicalGAVs() {
+        return new AbstractList<CanonicalGAV>() {
+            @Override
+            public CanonicalGAV get(int index) {
+                checkIndex(index);
+                CanonicalGAV gav = new CanonicalGAV();
+                gav.setGroup(getGroup(index));
+                gav.setArtifact(getArtifact(index));
+                gav.setVersion(getVersion(index));
+                gav.setClassifier(getClassifier(index));
+                gav.setExtension(getExtension(index));
+                gav.setExcludeRules(getExcludeRules(index));
+                gav.setUsages(getUsages(index));
+                return gav;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Dependency " + index + " of " + size);
+        }
+    }
+
+    private int internExcludeRules(List<MavenExcludeRule> rules) {
+        if (rules == null) {
+            return NULL;
+        }
+        Integer id = excludeRulesIds.get(rules);
+        if (id == null) {
+            id = excludeRules.size();
+            excludeRulesIds.put(rules, id);
+            excludeRules.add(rules);
+        }
+        return id;
+    }
+
+    private boolean rowEquals(int dependency, int[] row) {
+        int offset = dependency * FIELDS;
+        for (int field = 0; field < FIELDS; field++) {
+            if (dependencies[offset + field] != row[field]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int dependency = 0; dependency < size; dependency++) {
+            int slot = hashes[dependency] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = dependency + 1;
+        }
+    }
+
+    /**
+     * Strings numbered in the order they are added, found through an open addressing table.
+     */
+    private static final class StringDictionary {
+        private String[] values = new String[16];
+        private int size;
+        // string number plus one, zero for a free slot
+        private int[] slots = new int[32];
+
+        int intern(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            int mask = slots.length - 1;
+            int slot = value.hashCode() & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (values[id].equals(value)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            int id = size++;
+            values[id] = value;
+            slots[slot] = id + 1;
+            if (size * 2 > slots.length) {
+                slots = new int[slots.length * 2];
+                mask = slots.length - 1;
+                for (int existing = 0; existing < size; existing++) {
+                    slot = values[existing].hashCode() & mask;
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = existing + 1;
+                }
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return id == NULL ? null : values[id];
+        }
+    }
+}
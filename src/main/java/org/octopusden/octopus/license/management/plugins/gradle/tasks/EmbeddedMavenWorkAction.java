@@ -0,0 +1,97 @@
+package org.octopusden.octopus.license.management.plugins.gradle.tasks;
+
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs Maven through {@code org.apache.maven.cli.MavenCli} of a Maven installation.
+ * <p>
+ * Maven is loaded by an isolated class loader, so it does not see the Gradle logging of the worker,
+ * the class loader of an installation is kept by the worker process and reused by the following runs.
+ * Maven sets system properties of the JVM, so the action must be run in a worker process.
+ * The Maven output is written to the log file and the exit code to the exit code file.
+ */
+public abstract class EmbeddedMavenWorkAction implements WorkAction<EmbeddedMavenWorkAction.Parameters> {
+    private static final Map<List<File>, ClassLoader> MAVEN_CLASS_LOADERS = new ConcurrentHashMap<>();
+
+    public interface Parameters extends WorkParameters {
+        DirectoryProperty getMavenHome();
+
+        ConfigurableFileCollection getMavenClasspath();
+
+        DirectoryProperty getWorkingDirectory();
+
+        ListProperty<String> getArguments();
+
+        RegularFileProperty getLogFile();
+
+        RegularFileProperty getExitCodeFile();
+    }
+
+    @Override
+    public void execute() {
+        Parameters parameters = getParameters();
+        String workingDirectory = parameters.getWorkingDirectory().get().getAsFile().getAbsolutePath();
+        System.setProperty("maven.home", parameters.getMavenHome().get().getAsFile().getAbsolutePath());
+        System.setProperty("maven.multiModuleProjectDirectory", workingDirectory);
+        List<String> arguments = parameters.getArguments().get();
+        File logFile = parameters.getLogFile().get().getAsFile();
+        ClassLoader mavenClassLoader = MAVEN_CLASS_LOADERS.computeIfAbsent(new ArrayList<>(parameters.getMavenClasspath().getFiles()),
+                EmbeddedMavenWorkAction::createClassLoader);
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        int exitCode;
+        try (PrintStream log = new PrintStream(new FileOutputStream(logFile), true, StandardCharsets.UTF_8.name())) {
+            // MavenCli creates its class world from the context class loader
+            thread.setContextClassLoader(mavenClassLoader);
+            Class<?> mavenCli = Class.forName("org.apache.maven.cli.MavenCli", true, mavenClassLoader);
+            Method doMain = mavenCli.getMethod("doMain", String[].class, String.class, PrintStream.class, PrintStream.class);
+            exitCode = (Integer) doMain.invoke(mavenCli.getConstructor().newInstance(),
+                    arguments.toArray(new String[0]), workingDirectory, log, log);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Maven embedder failed", e.getCause());
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new IllegalStateException("Unable to run Maven embedder", e);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+        try {
+            Files.write(parameters.getExitCodeFile().get().getAsFile().toPath(), String.valueOf(exitCode).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write Maven exit code", e);
+        }
+    }
+
+    private static ClassLoader createClassLoader(List<File> classpath) {
+        URL[] urls = new URL[classpath.size()];
+        for (int index = 0; index < urls.length; index++) {
+            try {
+                urls[index] = classpath.get(index).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid Maven classpath entry " + classpath.get(index), e);
+            }
+        }
+        // The platform classes only, the classes of the worker are not visible to Maven
+        return new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    }
+}
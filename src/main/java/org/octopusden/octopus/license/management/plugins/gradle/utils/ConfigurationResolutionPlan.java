@@ -0,0 +1,87 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Plan of the configurations to resolve to collect the dependencies of a set of configurations.
+ * A configuration is not resolved if another configuration of the set has the same resolution inputs:
+ * dependencies and constraints (inherited ones included), exclude rules and attributes,
+ * so both resolve the same versions, its first level dependencies are taken from the resolution of the covering configuration.
+ * A configuration declaring a part of the dependencies of another one is resolved on its own,
+ * as conflict resolution may select other versions without the rest of the dependencies.
+ * Configurations without dependencies are not resolved at all.
+ */
+public final class ConfigurationResolutionPlan {
+    private final Map<String, List<String>> coveredConfigurations;
+    private final int savedResolutions;
+
+    private ConfigurationResolutionPlan(Map<String, List<String>> coveredConfigurations, int savedResolutions) {
+        this.coveredConfigurations = Collections.unmodifiableMap(coveredConfigurations);
+        this.savedResolutions = savedResolutions;
+    }
+
+    /**
+     * Chooses the configurations to resolve, the first configuration by name is resolved of the configurations with equal inputs.
+     *
+     * @param dependencies resolution inputs of every configuration by configuration name
+     * @return resolution plan
+     */
+    public static ConfigurationResolutionPlan plan(Map<String, ? extends Collection<?>> dependencies) {
+        List<String> candidates = new ArrayList<>(new TreeMap<>(dependencies).keySet());
+
+        Map<String, List<String>> covered = new TreeMap<>();
+        Map<Set<Object>, String> resolvedDependencies = new HashMap<>();
+        int saved = 0;
+        for (String candidate : candidates) {
+            Collection<?> candidateDependencies = dependencies.get(candidate);
+            if (candidateDependencies.isEmpty()) {
+                saved++;
+                continue;
+            }
+            Set<Object> inputs = new HashSet<>(candidateDependencies);
+            String coveringConfiguration = resolvedDependencies.get(inputs);
+            if (coveringConfiguration != null) {
+                covered.get(coveringConfiguration).add(candidate);
+                saved++;
+            } else {
+                covered.put(candidate, new ArrayList<>());
+                resolvedDependencies.put(inputs, candidate);
+            }
+        }
+        covered.replaceAll((configuration, configurations) -> {
+            Collections.sort(configurations);
+            return Collections.unmodifiableList(configurations);
+        });
+        return new ConfigurationResolutionPlan(covered, saved);
+    }
+
+    /**
+     * @return names of the configurations to resolve
+     */
+    public Set<String> getResolvedConfigurations() {
+        return coveredConfigurations.keySet();
+    }
+
+    /**
+     * @return names of the configurations, which dependencies are collected from the resolution of {@code configuration}
+     */
+    public List<String> getCoveredConfigurations(String configuration) {
+        List<String> configurations = coveredConfigurations.get(configuration);
+        return configurations == null ? Collections.emptyList() : configurations;
+    }
+
+    /**
+     * @return number of the configurations not resolved
+     */
+    public int getSavedResolutions() {
+        return savedResolutions;
+    }
+}
@@ -0,0 +1,358 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the dependencies list, an alternative to the JSON dependencies list for machine consumers.
+ * <p>
+ * All strings are stored once in a sorted dictionary and referenced by their index, {@code -1} stands for {@code null}.
+ * Records are sorted by coordinates. The header holds the positions of the string offsets, the string data,
+ * the record offsets and the record data, so a record is read without reading the preceding ones.
+ * Every record consists of the group, artifact, version, classifier and extension string indexes, followed by
+ * the exclude rules and the usages, each as a count ({@code -1} for {@code null}) and pairs of string indexes.
+ * <p>
+ * The snapshot is read through a memory-mapped buffer, strings are decoded once on first access.
+ */
+public final class DependenciesSnapshot {
+    private static final int MAGIC = 0x4C444550;
+    private static final int VERSION = 1;
+    private static final int NULL = -1;
+
+    private final ByteBuffer buffer;
+    private final int stringOffsetsPosition;
+    private final int stringDataPosition;
+    private final int recordOffsetsPosition;
+    private final int recordDataPosition;
+    private final String[] strings;
+    private final int size;
+
+    private DependenciesSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.remaining() < 32 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported dependencies snapshot format");
+        }
+        strings = new String[buffer.getInt(8)];
+        size = buffer.getInt(12);
+        stringOffsetsPosition = buffer.getInt(16);
+        stringDataPosition = buffer.getInt(20);
+        recordOffsetsPosition = buffer.getInt(24);
+        recordDataPosition = buffer.getInt(28);
+    }
+
+    /**
+     * Maps the snapshot file into memory.
+     *
+     * @throws IOException if the file can not be read or has unsupported format
+     */
+    public static DependenciesSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new DependenciesSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the snapshot from bytes.
+     *
+     * @throws IOException if the bytes have unsupported format
+     */
+    public static DependenciesSnapshot read(byte[] bytes) throws IOException {
+        return new DependenciesSnapshot(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return number of the records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param readUsages whether the usages have to be read, the record has no usages otherwise
+     * @return record with the index in the coordinates order
+     */
+    public CanonicalGAV get(int index, boolean readUsages) {
+        return readRecord(index, readUsages, new HashMap<>());
+    }
+
+    /**
+     * Passes all records to {@code consumer} in the coordinates order, equal exclude rule lists are shared.
+     *
+     * @param readUsages whether the usages have to be read, the records have no usages otherwise
+     */
+    public void forEach(boolean readUsages, Consumer<CanonicalGAV> consumer) {
+        Map<List<MavenExcludeRule>, List<MavenExcludeRule>> sharedRules = new HashMap<>();
+        for (int index = 0; index < size; index++) {
+            consumer.accept(readRecord(index, readUsages, sharedRules));
+        }
+    }
+
+    private CanonicalGAV readRecord(int index, boolean readUsages, Map<List<MavenExcludeRule>, List<MavenExcludeRule>> sharedRules) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + size);
+        }
+        int position = recordDataPosition + buffer.getInt(recordOffsetsPosition + index * 4);
+        CanonicalGAV gav = new CanonicalGAV();
+        gav.setGroup(getString(buffer.getInt(position)));
+        gav.setArtifact(getString(buffer.getInt(position + 4)));
+        gav.setVersion(getString(buffer.getInt(position + 8)));
+        gav.setClassifier(getString(buffer.getInt(position + 12)));
+        gav.setExtension(getString(buffer.getInt(position + 16)));
+        position += 20;
+        int ruleCount = buffer.getInt(position);
+        position += 4;
+        if (ruleCount != NULL) {
+            List<MavenExcludeRule> rules = new ArrayList<>(ruleCount);
+            for (int rule = 0; rule < ruleCount; rule++, position += 8) {
+                MavenExcludeRule excludeRule = new MavenExcludeRule();
+                excludeRule.setGroup(getString(buffer.getInt(position)));
+                excludeRule.setArtifact(getString(buffer.getInt(position + 4)));
+                rules.add(excludeRule);
+            }
+            List<MavenExcludeRule> shared = sharedRules.putIfAbsent(rules, rules);
+            gav.setExcludeRules(shared != null ? shared : rules);
+        }
+        if (readUsages) {
+            int usageCount = buffer.getInt(position);
+            position += 4;
+            List<DependencyUsage> usages = new ArrayList<>(usageCount);
+            for (int usage = 0; usage < usageCount; usage++, position += 8) {
+                DependencyUsage dependencyUsage = new DependencyUsage();
+                dependencyUsage.setProject(getString(buffer.getInt(position)));
+                dependencyUsage.setConfiguration(getString(buffer.getInt(position + 4)));
+                usages.add(dependencyUsage);
+            }
+            gav.setUsages(usages);
+        }
+        return gav;
+    }
+
+    private String getString(int id) {
+        if (id == NULL) {
+            return null;
+        }
+        String string = strings[id];
+        if (string == null) {
+            int start = buffer.getInt(stringOffsetsPosition + id * 4);
+            int end = buffer.getInt(stringOffsetsPosition + (id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            for (int offset = 0; offset < bytes.length; offset++) {
+                bytes[offset] = buffer.get(stringDataPosition + start + offset);
+            }
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Writes the records to the file, the records are held in memory while written.
+     */
+    public static void write(File file, Iterable<CanonicalGAV> dependencies) throws IOException {
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            write(output, dependencies);
+        }
+    }
+
+    public static void write(OutputStream output, Iterable<CanonicalGAV> dependencies) throws IOException {
+        List<CanonicalGAV> records = new ArrayList<>();
+        TreeSet<String> dictionary = new TreeSet<>();
+        for (CanonicalGAV gav : dependencies) {
+            records.add(gav);
+            addStrings(dictionary, gav);
+        }
+        Map<String, Integer> ids = getIds(dictionary);
+
+        // Dictionary indexes follow the string order, so records are sorted by indexes
+        Comparator<int[]> coordinates = (first, second) -> {
+            for (int index = 0; index < 5; index++) {
+                int result = Integer.compare(first[index], second[index]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        };
+        List<int[]> keys = new ArrayList<>(records.size());
+        for (int index = 0; index < records.size(); index++) {
+            CanonicalGAV gav = records.get(index);
+            keys.add(new int[]{getId(ids, gav.getGroup()), getId(ids, gav.getArtifact()), getId(ids, gav.getVersion()),
+                    getId(ids, gav.getClassifier()), getId(ids, gav.getExtension()), index});
+        }
+        keys.sort(coordinates.thenComparingInt(key -> key[5]));
+
+        DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output));
+        writeStrings(dataOutput, dictionary, records.size());
+        int offset = 0;
+        for (int[] key : keys) {
+            dataOutput.writeInt(offset);
+            offset += getRecordSize(records.get(key[5]));
+        }
+        for (int[] key : keys) {
+            writeRecord(dataOutput, records.get(key[5]), ids);
+        }
+        dataOutput.flush();
+    }
+
+    /**
+     * Writes the records sorted by {@link SpillingDependencySet#COORDINATES} to the file, only the strings are held in memory.
+     */
+    public static void writeSorted(File file, Iterable<CanonicalGAV> dependencies) throws IOException {
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            writeSorted(output, dependencies);
+        }
+    }
+
+    /**
+     * Writes the records sorted by {@link SpillingDependencySet#COORDINATES}, such as the spilled dependencies.
+     * The records are iterated three times: to collect the strings, to write the record offsets and to write the records,
+     * so only the strings are held in memory.
+     *
+     * @throws IllegalArgumentException if the records are not sorted
+     */
+    public static void writeSorted(OutputStream output, Iterable<CanonicalGAV> dependencies) throws IOException {
+        TreeSet<String> dictionary = new TreeSet<>();
+        int size = 0;
+        for (CanonicalGAV gav : dependencies) {
+            addStrings(dictionary, gav);
+            size++;
+        }
+        Map<String, Integer> ids = getIds(dictionary);
+
+        DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output));
+        writeStrings(dataOutput, dictionary, size);
+        int offset = 0;
+        CanonicalGAV previous = null;
+        for (CanonicalGAV gav : dependencies) {
+            if (previous != null && SpillingDependencySet.COORDINATES.compare(previous, gav) > 0) {
+                throw new IllegalArgumentException("Dependencies are not sorted by coordinates: " + gav.logString());
+            }
+            dataOutput.writeInt(offset);
+            offset += getRecordSize(gav);
+            previous = gav;
+        }
+        for (CanonicalGAV gav : dependencies) {
+            writeRecord(dataOutput, gav, ids);
+        }
+        dataOutput.flush();
+    }
+
+    private static void addStrings(TreeSet<String> dictionary, CanonicalGAV gav) {
+        addString(dictionary, gav.getGroup());
+        addString(dictionary, gav.getArtifact());
+        addString(dictionary, gav.getVersion());
+        addString(dictionary, gav.getClassifier());
+        addString(dictionary, gav.getExtension());
+        if (gav.getExcludeRules() != null) {
+            for (MavenExcludeRule rule : gav.getExcludeRules()) {
+                addString(dictionary, rule.getGroup());
+                addString(dictionary, rule.getArtifact());
+            }
+        }
+        if (gav.getUsages() != null) {
+            for (DependencyUsage usage : gav.getUsages()) {
+                addString(dictionary, usage.getProject());
+                addString(dictionary, usage.getConfiguration());
+            }
+        }
+    }
+
+    private static Map<String, Integer> getIds(TreeSet<String> dictionary) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (String string : dictionary) {
+            ids.put(string, ids.size());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the header, the string offsets and the string data, the record offsets follow.
+     */
+    private static void writeStrings(DataOutputStream output, TreeSet<String> dictionary, int size) throws IOException {
+        List<byte[]> strings = new ArrayList<>(dictionary.size());
+        int stringDataSize = 0;
+        for (String string : dictionary) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            strings.add(bytes);
+            stringDataSize += bytes.length;
+        }
+        int stringOffsetsPosition = 32;
+        int stringDataPosition = stringOffsetsPosition + (strings.size() + 1) * 4;
+        int recordOffsetsPosition = stringDataPosition + stringDataSize;
+        int recordDataPosition = recordOffsetsPosition + size * 4;
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(strings.size());
+        output.writeInt(size);
+        output.writeInt(stringOffsetsPosition);
+        output.writeInt(stringDataPosition);
+        output.writeInt(recordOffsetsPosition);
+        output.writeInt(recordDataPosition);
+        int offset = 0;
+        for (byte[] bytes : strings) {
+            output.writeInt(offset);
+            offset += bytes.length;
+        }
+        output.writeInt(offset);
+        for (byte[] bytes : strings) {
+            output.write(bytes);
+        }
+    }
+
+    private static int getRecordSize(CanonicalGAV gav) {
+        return 28 + (gav.getExcludeRules() == null ? 0 : gav.getExcludeRules().size() * 8)
+                + (gav.getUsages() == null ? 0 : gav.getUsages().size() * 8);
+    }
+
+    private static void writeRecord(DataOutputStream output, CanonicalGAV gav, Map<String, Integer> ids) throws IOException {
+        output.writeInt(getId(ids, gav.getGroup()));
+        output.writeInt(getId(ids, gav.getArtifact()));
+        output.writeInt(getId(ids, gav.getVersion()));
+        output.writeInt(getId(ids, gav.getClassifier()));
+        output.writeInt(getId(ids, gav.getExtension()));
+        if (gav.getExcludeRules() == null) {
+            output.writeInt(NULL);
+        } else {
+            output.writeInt(gav.getExcludeRules().size());
+            for (MavenExcludeRule rule : gav.getExcludeRules()) {
+                output.writeInt(getId(ids, rule.getGroup()));
+                output.writeInt(getId(ids, rule.getArtifact()));
+            }
+        }
+        List<DependencyUsage> usages = gav.getUsages() == null ? new ArrayList<>() : gav.getUsages();
+        output.writeInt(usages.size());
+        for (DependencyUsage usage : usages) {
+            output.writeInt(getId(ids, usage.getProject()));
+            output.writeInt(getId(ids, usage.getConfiguration()));
+        }
+    }
+
+    private static void addString(TreeSet<String> dictionary, String string) {
+        if (string != null) {
+            dictionary.add(string);
+        }
+    }
+
+    private static int getId(Map<String, Integer> ids, String string) {
+        return string == null ? NULL : ids.get(string);
+    }
+}
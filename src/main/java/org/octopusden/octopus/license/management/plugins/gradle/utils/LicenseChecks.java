@@ -0,0 +1,124 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+/**
+ * The {@code failOnMissing} and {@code failOnBlacklist} checks of the license Maven plugin applied to a third-party list,
+ * for the licenses not resolved by a Maven run.
+ */
+public final class LicenseChecks {
+    public static final String UNKNOWN_LICENSE = "Unknown license";
+
+    private LicenseChecks() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @return licenses of the dependencies of the third-party list by {@link LicensesOutputSplitter#getKey(String, String, String)}
+     */
+    public static Map<String, List<String>> readLicenses(Path thirdParty) throws IOException {
+        Map<String, List<String>> licenses = new LinkedHashMap<>();
+        if (!Files.exists(thirdParty)) {
+            return licenses;
+        }
+        for (String line : Files.readAllLines(thirdParty, StandardCharsets.UTF_8)) {
+            Matcher matcher = LicensesOutputSplitter.THIRD_PARTY_DEPENDENCY.matcher(line);
+            if (matcher.find()) {
+                licenses.put(LicensesOutputSplitter.getKey(matcher.group(1), matcher.group(2), matcher.group(3)),
+                        parseLicenses(line));
+            }
+        }
+        return licenses;
+    }
+
+    /**
+     * @return licenses in the leading parentheses of a third-party line, {@code (License A) (License B) Name (coordinates - url)}
+     */
+    static List<String> parseLicenses(String line) {
+        List<String> licenses = new ArrayList<>();
+        String text = line.trim();
+        int position = 0;
+        while (position < text.length() && text.charAt(position) == '(') {
+            int depth = 0;
+            int end = position;
+            do {
+                char character = text.charAt(end);
+                if (character == '(') {
+                    depth++;
+                } else if (character == ')') {
+                    depth--;
+                }
+                end++;
+            } while (depth > 0 && end < text.length());
+            if (depth > 0 || LicensesOutputSplitter.THIRD_PARTY_DEPENDENCY.matcher(text.substring(position, end)).find()) {
+                break;
+            }
+            licenses.add(text.substring(position + 1, end - 1).trim());
+            position = end;
+            while (position < text.length() && text.charAt(position) == ' ') {
+                position++;
+            }
+        }
+        return licenses;
+    }
+
+    /**
+     * @return dependencies without a known license
+     */
+    public static List<String> findMissing(Map<String, List<String>> licenses) {
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, List<String>> dependency : licenses.entrySet()) {
+            if (dependency.getValue().isEmpty() || dependency.getValue().contains(UNKNOWN_LICENSE)) {
+                missing.add(dependency.getKey());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * A dependency is allowed if one of its licenses or their canonical names is on the whitelist of the registry,
+     * dependencies without a known license are left to {@link #findMissing(Map)}.
+     *
+     * @return dependencies without an allowed license by their licenses
+     */
+    public static Map<String, List<String>> findBlacklisted(Map<String, List<String>> licenses, LicenseRegistryIndex index) {
+        Set<String> whitelist = new HashSet<>();
+        for (String license : index.getWhitelist()) {
+            whitelist.add(license);
+            whitelist.add(getCanonicalName(index, license));
+        }
+        Map<String, List<String>> blacklisted = new TreeMap<>();
+        for (Map.Entry<String, List<String>> dependency : licenses.entrySet()) {
+            List<String> dependencyLicenses = dependency.getValue();
+            if (dependencyLicenses.isEmpty() || dependencyLicenses.contains(UNKNOWN_LICENSE)) {
+                continue;
+            }
+            boolean allowed = false;
+            for (String license : dependencyLicenses) {
+                allowed |= whitelist.contains(license) || whitelist.contains(getCanonicalName(index, license));
+            }
+            if (!allowed) {
+                for (String license : dependencyLicenses) {
+                    blacklisted.computeIfAbsent(license, key -> new ArrayList<>()).add(dependency.getKey());
+                }
+            }
+        }
+        return blacklisted;
+    }
+
+    private static String getCanonicalName(LicenseRegistryIndex index, String license) {
+        String canonicalName = index.getCanonicalName(license);
+        return canonicalName != null ? canonicalName : license;
+    }
+}
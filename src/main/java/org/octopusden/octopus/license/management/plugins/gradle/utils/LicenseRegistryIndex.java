@@ -0,0 +1,164 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable compiled form of the license registry index files: the whitelist, the license aliases (merges.txt)
+ * and the license text files (licenses.properties).
+ * The index is stored in a compact binary form together with the hash of the sources it was compiled from.
+ */
+public final class LicenseRegistryIndex {
+    private static final int MAGIC = 0x4C524958;
+    private static final int VERSION = 1;
+    private static final String REGISTRY_SEPARATOR = "[|]";
+
+    private final String sourceHash;
+    private final List<String> whitelist;
+    private final Map<String, List<String>> aliases;
+    private final Map<String, String> canonicalNames;
+    private final Map<String, String> licenseFiles;
+
+    private LicenseRegistryIndex(String sourceHash, List<String> whitelist, Map<String, List<String>> aliases, Map<String, String> licenseFiles) {
+        this.sourceHash = sourceHash;
+        this.whitelist = Collections.unmodifiableList(whitelist);
+        this.aliases = Collections.unmodifiableMap(aliases);
+        this.licenseFiles = Collections.unmodifiableMap(licenseFiles);
+        Map<String, String> canonical = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : aliases.entrySet()) {
+            for (String alias : entry.getValue()) {
+                canonical.putIfAbsent(alias, entry.getKey());
+            }
+        }
+        this.canonicalNames = Collections.unmodifiableMap(canonical);
+    }
+
+    /**
+     * Compiles the index from the content of the registry index files.
+     *
+     * @param sourceHash hash identifying the content of the index files
+     * @param whitelist  content of the whitelist file, licenses separated by '|'
+     * @param aliases    content of merges.txt, one '|' separated alias group per line, the canonical name first
+     * @param fileList   content of licenses.properties mapping licenses to the registry files with their texts
+     * @return compiled index
+     * @throws IOException if licenses.properties content can not be parsed
+     */
+    public static LicenseRegistryIndex parse(String sourceHash, String whitelist, String aliases, String fileList) throws IOException {
+        List<String> whitelistEntries = whitelist == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(whitelist.split(REGISTRY_SEPARATOR)));
+        Map<String, List<String>> aliasGroups = new LinkedHashMap<>();
+        if (aliases != null) {
+            for (String line : aliases.split("\\r\\n|\\r|\\n")) {
+                if (!line.isEmpty()) {
+                    List<String> group = Arrays.asList(line.split(REGISTRY_SEPARATOR));
+                    aliasGroups.put(group.get(0), Collections.unmodifiableList(new ArrayList<>(group)));
+                }
+            }
+        }
+        Properties properties = new Properties();
+        if (fileList != null) {
+            properties.load(new StringReader(fileList));
+        }
+        Map<String, String> files = new LinkedHashMap<>();
+        for (String license : properties.stringPropertyNames()) {
+            files.put(license, properties.getProperty(license));
+        }
+        return new LicenseRegistryIndex(sourceHash, whitelistEntries, aliasGroups, files);
+    }
+
+    /**
+     * Reads an index written by {@link #write}.
+     *
+     * @param input stream to read the index from
+     * @return the index
+     * @throws IOException if the stream does not contain an index of the supported version
+     */
+    public static LicenseRegistryIndex read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Unsupported license registry index format");
+        }
+        String sourceHash = input.readUTF();
+        int whitelistSize = input.readInt();
+        List<String> whitelist = new ArrayList<>(whitelistSize);
+        for (int i = 0; i < whitelistSize; i++) {
+            whitelist.add(input.readUTF());
+        }
+        int aliasesSize = input.readInt();
+        Map<String, List<String>> aliases = new LinkedHashMap<>();
+        for (int i = 0; i < aliasesSize; i++) {
+            String canonical = input.readUTF();
+            int groupSize = input.readInt();
+            List<String> group = new ArrayList<>(groupSize);
+            for (int j = 0; j < groupSize; j++) {
+                group.add(input.readUTF());
+            }
+            aliases.put(canonical, Collections.unmodifiableList(group));
+        }
+        int filesSize = input.readInt();
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < filesSize; i++) {
+            files.put(input.readUTF(), input.readUTF());
+        }
+        return new LicenseRegistryIndex(sourceHash, whitelist, aliases, files);
+    }
+
+    public void write(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(sourceHash);
+        output.writeInt(whitelist.size());
+        for (String license : whitelist) {
+            output.writeUTF(license);
+        }
+        output.writeInt(aliases.size());
+        for (Map.Entry<String, List<String>> entry : aliases.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue().size());
+            for (String alias : entry.getValue()) {
+                output.writeUTF(alias);
+            }
+        }
+        output.writeInt(licenseFiles.size());
+        for (Map.Entry<String, String> entry : licenseFiles.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        output.flush();
+    }
+
+    public String getSourceHash() {
+        return sourceHash;
+    }
+
+    public List<String> getWhitelist() {
+        return whitelist;
+    }
+
+    /**
+     * @return alias groups keyed by the canonical license name, every group starts with the canonical name
+     */
+    public Map<String, List<String>> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * @param license license name or alias
+     * @return canonical name of the license or {@code null} if the license has no aliases
+     */
+    public String getCanonicalName(String license) {
+        return canonicalNames.get(license);
+    }
+
+    public Map<String, String> getLicenseFiles() {
+        return licenseFiles;
+    }
+}
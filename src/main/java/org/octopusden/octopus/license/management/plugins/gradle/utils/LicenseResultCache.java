@@ -0,0 +1,150 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent license results of the dependencies, shared by all builds using the same Gradle user home.
+ * <p>
+ * An entry holds the part of the license Maven output for a dependency and its transitive dependencies: the third-party list,
+ * the license summary and the license files, so the transitive dependencies Maven resolves are kept as well.
+ * Entries are keyed by the SHA-256 of the Maven configuration and the descriptor of the dependency,
+ * so a change of the plugin version, the excluded groups, the Maven parameters or of the dependency does not reuse stale results.
+ * File contents are stored once by their SHA-256. Files are never changed once written and are moved into place atomically,
+ * so builds share the cache without locking.
+ */
+public final class LicenseResultCache {
+    public static final String CACHE_DIRECTORY = "caches/octopus-license-results";
+
+    private static final String ENTRIES = "entries";
+    private static final String TEXTS = "texts";
+    private static final String FILES = "files";
+
+    private final File directory;
+    private final String configuration;
+
+    /**
+     * @param configuration Maven configuration the results depend on
+     */
+    public LicenseResultCache(File directory, String configuration) {
+        this.directory = directory;
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param dependency descriptor of a dependency passed to Maven
+     * @return key of the license results of the dependency
+     */
+    public String getKey(String dependency) {
+        return sha256((configuration + "\n" + dependency).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean contains(String key) {
+        return getEntryFile(key).isFile();
+    }
+
+    /**
+     * Stores the part of the license Maven output for a dependency as the results of the key,
+     * see {@link LicensesOutputSplitter#split(File, java.util.Map)}.
+     */
+    public void store(String key, File outputDirectory) throws IOException {
+        Path source = outputDirectory.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.exists(source) ? Files.walk(source) : Stream.empty()) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Properties entry = new Properties();
+        entry.setProperty(FILES, String.valueOf(files.size()));
+        for (int index = 0; index < files.size(); index++) {
+            entry.setProperty(FILES + "." + index + ".path", source.relativize(files.get(index)).toString());
+            entry.setProperty(FILES + "." + index + ".sha256", storeText(files.get(index)));
+        }
+        writeAtomically(getEntryFile(key).toPath(), output -> entry.store(output, null));
+    }
+
+    /**
+     * Replaces the content of the output directory by the stored results of the key, the results have to be stored.
+     */
+    public void write(String key, File outputDirectory) throws IOException {
+        Properties entry = new Properties();
+        try (InputStream input = Files.newInputStream(getEntryFile(key).toPath())) {
+            entry.load(input);
+        }
+        Path target = outputDirectory.toPath();
+        LicensesOutputSplitter.delete(target);
+        Files.createDirectories(target);
+        int count = Integer.parseInt(entry.getProperty(FILES, "0"));
+        for (int index = 0; index < count; index++) {
+            Path file = target.resolve(entry.getProperty(FILES + "." + index + ".path"));
+            Files.createDirectories(file.getParent());
+            Files.copy(getTextFile(entry.getProperty(FILES + "." + index + ".sha256")).toPath(), file);
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(directory, ENTRIES + "/" + key.substring(0, 2) + "/" + key);
+    }
+
+    private File getTextFile(String hash) {
+        return new File(directory, TEXTS + "/" + hash.substring(0, 2) + "/" + hash);
+    }
+
+    /**
+     * @return SHA-256 of the text
+     */
+    private String storeText(Path file) throws IOException {
+        byte[] text = Files.readAllBytes(file);
+        String hash = sha256(text);
+        Path textFile = getTextFile(hash).toPath();
+        if (!Files.exists(textFile)) {
+            writeAtomically(textFile, output -> output.write(text));
+        }
+        return hash;
+    }
+
+    private interface Content {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    private static void writeAtomically(Path file, Content content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temporaryFile)) {
+                content.writeTo(output);
+            }
+            try {
+                Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte value : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hash.append(String.format("%02x", value));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Splits the output of one license Maven run for the whole build into the output of a single project,
+ * and merges the outputs of license Maven runs.
+ * <p>
+ * The third-party list keeps the lines of the project dependencies only, the license summary keeps
+ * the {@code dependency} elements of the project dependencies only, and only the license files referenced by the kept
+ * elements are copied. All other files are copied as is, as well as all license files if there is no license summary.
+ * Dependencies are identified by {@code group:artifact:version}.
+ */
+public final class LicensesOutputSplitter {
+    public static final String THIRD_PARTY_FILE = "THIRD-PARTY.txt";
+
+    private static final String LICENSE_SUMMARY_ELEMENT = "licenseSummary";
+    static final Pattern THIRD_PARTY_DEPENDENCY = Pattern.compile("\\(([^\\s:()]+):([^\\s:()]+):(\\S+) - ");
+    private static final Pattern THIRD_PARTY_COUNT = Pattern.compile("Lists of \\d+ third-party dependencies");
+
+    private LicensesOutputSplitter() {
+    }
+
+    public static String getKey(String group, String artifact, String version) {
+        return group + ":" + artifact + ":" + version;
+    }
+
+    /**
+     * Selects the dependencies of a project found in the output of the license Maven run for the whole build.
+     * Maven mediates the versions of transitive dependencies other than Gradle, so a transitive dependency
+     * whose version is not in the output is matched by all versions of its group and artifact there.
+     *
+     * @param dependencies           keys of the first level dependencies of the project
+     * @param transitiveDependencies keys of the transitive dependencies of the project resolved by Gradle
+     * @return keys of the dependencies to keep, see {@link #split(File, File, Set)}
+     */
+    public static Set<String> selectDependencies(File aggregatedDirectory, Set<String> dependencies,
+                                                 Set<String> transitiveDependencies) throws IOException {
+        return selectDependencies(getVersions(aggregatedDirectory), dependencies, transitiveDependencies);
+    }
+
+    /**
+     * @return keys of the dependencies listed by the output by {@code group:artifact},
+     * see {@link #selectDependencies(Map, Set, Set)}
+     */
+    public static Map<String, List<String>> getVersions(File aggregatedDirectory) throws IOException {
+        Map<String, List<String>> versions = new HashMap<>();
+        for (String key : readDependencies(aggregatedDirectory.toPath())) {
+            versions.computeIfAbsent(key.substring(0, key.lastIndexOf(':')), groupArtifact -> new ArrayList<>()).add(key);
+        }
+        return versions;
+    }
+
+    /**
+     * Selects the dependencies of a project by the versions read once from the output of the license Maven run,
+     * see {@link #selectDependencies(File, Set, Set)}.
+     */
+    public static Set<String> selectDependencies(Map<String, List<String>> versions, Set<String> dependencies,
+                                                 Set<String> transitiveDependencies) {
+        Set<String> selected = new HashSet<>(dependencies);
+        for (String key : transitiveDependencies) {
+            List<String> found = versions.get(key.substring(0, key.lastIndexOf(':')));
+            if (found == null || found.contains(key)) {
+                selected.add(key);
+            } else {
+                selected.addAll(found);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return keys of the dependencies listed by the third-party list and the license summary of the output
+     */
+    private static Set<String> readDependencies(Path directory) throws IOException {
+        Set<String> dependencies = new HashSet<>();
+        for (Path file : listFiles(directory)) {
+            String name = file.getFileName().toString();
+            if (THIRD_PARTY_FILE.equals(name)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    Matcher matcher = THIRD_PARTY_DEPENDENCY.matcher(line);
+                    if (matcher.find()) {
+                        dependencies.add(getKey(matcher.group(1), matcher.group(2), matcher.group(3)));
+                    }
+                }
+            } else if (name.endsWith(".xml")) {
+                Document licenseSummary = readLicenseSummary(file);
+                if (licenseSummary != null) {
+                    for (Element dependency : getDependencies(licenseSummary)) {
+                        dependencies.add(getDependencyKey(dependency));
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Adds the output of a license Maven run to the output of another one: the lines of the third-party list,
+     * the {@code dependency} elements of the license summary and the files not present in {@code targetDirectory}.
+     */
+    public static void merge(File sourceDirectory, File targetDirectory) throws IOException {
+        merge(Collections.singletonList(sourceDirectory), targetDirectory);
+    }
+
+    /**
+     * Adds the outputs of license Maven runs to the output of another one, see {@link #merge(File, File)}.
+     * The merged files of {@code targetDirectory} are read and written once.
+     */
+    public static void merge(List<File> sourceDirectories, File targetDirectory) throws IOException {
+        Path target = targetDirectory.toPath();
+        Files.createDirectories(target);
+        Map<Path, Set<String>> thirdParties = new LinkedHashMap<>();
+        Map<Path, Document> licenseSummaries = new LinkedHashMap<>();
+        Map<Path, Set<String>> licenseSummaryKeys = new HashMap<>();
+        for (File sourceDirectory : sourceDirectories) {
+            Path source = sourceDirectory.toPath();
+            for (Path file : listFiles(source)) {
+                Path targetFile = target.resolve(source.relativize(file).toString());
+                String name = file.getFileName().toString();
+                Document licenseSummary = name.endsWith(".xml") ? readLicenseSummary(file) : null;
+                if (THIRD_PARTY_FILE.equals(name) && (thirdParties.containsKey(targetFile) || Files.exists(targetFile))) {
+                    Set<String> lines = thirdParties.get(targetFile);
+                    if (lines == null) {
+                        lines = new LinkedHashSet<>(readDependencyLines(targetFile));
+                        thirdParties.put(targetFile, lines);
+                    }
+                    lines.addAll(readDependencyLines(file));
+                } else if (licenseSummary != null && (licenseSummaries.containsKey(targetFile) || Files.exists(targetFile))) {
+                    Document targetLicenseSummary = licenseSummaries.get(targetFile);
+                    if (targetLicenseSummary == null) {
+                        targetLicenseSummary = readLicenseSummary(targetFile);
+                        if (targetLicenseSummary == null) {
+                            continue;
+                        }
+                        Set<String> keys = new HashSet<>();
+                        for (Element dependency : getDependencies(targetLicenseSummary)) {
+                            keys.add(getDependencyKey(dependency));
+                        }
+                        licenseSummaries.put(targetFile, targetLicenseSummary);
+                        licenseSummaryKeys.put(targetFile, keys);
+                    }
+                    Set<String> keys = licenseSummaryKeys.get(targetFile);
+                    Element dependencies = getDependenciesElement(targetLicenseSummary);
+                    for (Element dependency : getDependencies(licenseSummary)) {
+                        if (keys.add(getDependencyKey(dependency))) {
+                            dependencies.appendChild(targetLicenseSummary.importNode(dependency, true));
+                        }
+                    }
+                } else if (!Files.exists(targetFile)) {
+                    Files.createDirectories(targetFile.getParent());
+                    Files.copy(file, targetFile);
+                }
+            }
+        }
+        for (Map.Entry<Path, Set<String>> thirdParty : thirdParties.entrySet()) {
+            writeThirdParty(thirdParty.getKey(), new ArrayList<>(thirdParty.getValue()));
+        }
+        for (Map.Entry<Path, Document> licenseSummary : licenseSummaries.entrySet()) {
+            writeXml(licenseSummary.getValue(), licenseSummary.getKey());
+        }
+    }
+
+    private static List<String> readDependencyLines(Path thirdParty) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(thirdParty, StandardCharsets.UTF_8)) {
+            if (THIRD_PARTY_DEPENDENCY.matcher(line).find()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the element holding the {@code dependency} elements of the license summary, it is created if there are none
+     */
+    private static Element getDependenciesElement(Document licenseSummary) {
+        NodeList elements = licenseSummary.getElementsByTagName("dependencies");
+        if (elements.getLength() > 0) {
+            return (Element) elements.item(0);
+        }
+        Element dependencies = licenseSummary.createElement("dependencies");
+        licenseSummary.getDocumentElement().appendChild(dependencies);
+        return dependencies;
+    }
+
+    /**
+     * Replaces the content of {@code moduleDirectory} by the part of {@code aggregatedDirectory} for the dependencies.
+     *
+     * @param dependencies keys of the project dependencies, see {@link #getKey(String, String, String)}
+     */
+    public static void split(File aggregatedDirectory, File moduleDirectory, Set<String> dependencies) throws IOException {
+        Path source = aggregatedDirectory.toPath();
+        Path target = moduleDirectory.toPath();
+        delete(target);
+        Files.createDirectories(target);
+        List<Path> files = listFiles(source);
+        List<Path> otherFiles = new ArrayList<>();
+        Set<String> licenseFiles = null;
+        for (Path file : files) {
+            Path targetFile = target.resolve(source.relativize(file).toString());
+            String name = file.getFileName().toString();
+            Document licenseSummary = name.endsWith(".xml") ? readLicenseSummary(file) : null;
+            if (THIRD_PARTY_FILE.equals(name)) {
+                Files.createDirectories(targetFile.getParent());
+                Files.write(targetFile, splitThirdParty(Files.readAllLines(file, StandardCharsets.UTF_8), dependencies),
+                        StandardCharsets.UTF_8);
+            } else if (licenseSummary != null) {
+                if (licenseFiles == null) {
+                    licenseFiles = new HashSet<>();
+                }
+                licenseFiles.addAll(splitLicenseSummary(licenseSummary, dependencies));
+                Files.createDirectories(targetFile.getParent());
+                writeXml(licenseSummary, targetFile);
+            } else {
+                otherFiles.add(file);
+            }
+        }
+        for (Path file : otherFiles) {
+            if (licenseFiles == null || licenseFiles.contains(file.getFileName().toString())) {
+                Path targetFile = target.resolve(source.relativize(file).toString());
+                Files.createDirectories(targetFile.getParent());
+                Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the directories of several parts by the part of {@code aggregatedDirectory}
+     * for their dependencies, see {@link #split(File, File, Set)}. The output is read once and every part
+     * takes the lines and elements of its own dependencies only, so splitting many small parts does not read
+     * the whole output for every part.
+     *
+     * @param parts keys of the dependencies by the directory of the part
+     */
+    public static void split(File aggregatedDirectory, Map<File, Set<String>> parts) throws IOException {
+        Path source = aggregatedDirectory.toPath();
+        for (File part : parts.keySet()) {
+            delete(part.toPath());
+            Files.createDirectories(part.toPath());
+        }
+        List<Path> otherFiles = new ArrayList<>();
+        Map<File, Set<String>> licenseFiles = null;
+        for (Path file : listFiles(source)) {
+            String relativePath = source.relativize(file).toString();
+            String name = file.getFileName().toString();
+            Document licenseSummary = name.endsWith(".xml") ? readLicenseSummary(file) : null;
+            if (THIRD_PARTY_FILE.equals(name)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                List<Integer> otherLines = new ArrayList<>();
+                Map<String, List<Integer>> dependencyLines = new HashMap<>();
+                for (int index = 0; index < lines.size(); index++) {
+                    Matcher matcher = THIRD_PARTY_DEPENDENCY.matcher(lines.get(index));
+                    if (matcher.find()) {
+                        dependencyLines.computeIfAbsent(getKey(matcher.group(1), matcher.group(2), matcher.group(3)),
+                                key -> new ArrayList<>()).add(index);
+                    } else {
+                        otherLines.add(index);
+                    }
+                }
+                for (Map.Entry<File, Set<String>> part : parts.entrySet()) {
+                    List<Integer> partLines = new ArrayList<>(otherLines);
+                    for (String dependency : part.getValue()) {
+                        partLines.addAll(dependencyLines.getOrDefault(dependency, Collections.emptyList()));
+                    }
+                    Collections.sort(partLines);
+                    List<String> result = new ArrayList<>(partLines.size());
+                    for (int index : partLines) {
+                        result.add(lines.get(index));
+                    }
+                    Path targetFile = part.getKey().toPath().resolve(relativePath);
+                    Files.createDirectories(targetFile.getParent());
+                    Files.write(targetFile, updateCount(result, partLines.size() - otherLines.size()), StandardCharsets.UTF_8);
+                }
+            } else if (licenseSummary != null) {
+                if (licenseFiles == null) {
+                    licenseFiles = new HashMap<>();
+                }
+                List<Element> dependencies = getDependencies(licenseSummary);
+                Map<String, Integer> indexes = new HashMap<>();
+                for (int index = 0; index < dependencies.size(); index++) {
+                    indexes.putIfAbsent(getDependencyKey(dependencies.get(index)), index);
+                }
+                Document template = (Document) licenseSummary.cloneNode(true);
+                splitLicenseSummary(template, Collections.emptySet());
+                for (Map.Entry<File, Set<String>> part : parts.entrySet()) {
+                    List<Integer> partDependencies = new ArrayList<>();
+                    for (String dependency : part.getValue()) {
+                        Integer index = indexes.get(dependency);
+                        if (index != null) {
+                            partDependencies.add(index);
+                        }
+                    }
+                    Collections.sort(partDependencies);
+                    Document partLicenseSummary = (Document) template.cloneNode(true);
+                    Element partElement = getDependenciesElement(partLicenseSummary);
+                    Set<String> partLicenseFiles = licenseFiles.computeIfAbsent(part.getKey(), key -> new HashSet<>());
+                    for (int index : partDependencies) {
+                        Element dependency = dependencies.get(index);
+                        partElement.appendChild(partLicenseSummary.importNode(dependency, true));
+                        partLicenseFiles.addAll(getLicenseFiles(dependency));
+                    }
+                    Path targetFile = part.getKey().toPath().resolve(relativePath);
+                    Files.createDirectories(targetFile.getParent());
+                    writeXml(partLicenseSummary, targetFile);
+                }
+            } else {
+                otherFiles.add(file);
+            }
+        }
+        for (File part : parts.keySet()) {
+            for (Path file : otherFiles) {
+                if (licenseFiles == null || licenseFiles.get(part).contains(file.getFileName().toString())) {
+                    Path targetFile = part.toPath().resolve(source.relativize(file).toString());
+                    Files.createDirectories(targetFile.getParent());
+                    Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return lines of the third-party list without the lines of other dependencies, the dependencies count is updated
+     */
+    static List<String> splitThirdParty(List<String> lines, Set<String> dependencies) {
+        List<String> result = new ArrayList<>(lines.size());
+        int count = 0;
+        for (String line : lines) {
+            Matcher matcher = THIRD_PARTY_DEPENDENCY.matcher(line);
+            if (matcher.find()) {
+                if (!dependencies.contains(getKey(matcher.group(1), matcher.group(2), matcher.group(3)))) {
+                    continue;
+                }
+                count++;
+            }
+            result.add(line);
+        }
+        return updateCount(result, count);
+    }
+
+    private static List<String> updateCount(List<String> lines, int count) {
+        for (int index = 0; index < lines.size(); index++) {
+            lines.set(index, THIRD_PARTY_COUNT.matcher(lines.get(index))
+                    .replaceFirst("Lists of " + count + " third-party dependencies"));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the third-party list of the dependency lines the way the license Maven plugin does, the lines are sorted.
+     */
+    static void writeThirdParty(Path file, List<String> dependencyLines) throws IOException {
+        List<String> lines = new ArrayList<>(dependencyLines);
+        lines.sort(String.CASE_INSENSITIVE_ORDER);
+        lines.add(0, "");
+        lines.add(1, dependencyLines.isEmpty() ? "The project has no dependencies."
+                : "Lists of " + dependencyLines.size() + " third-party dependencies.");
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the {@code dependency} elements of other dependencies from the license summary.
+     *
+     * @return names of the license files referenced by the kept elements
+     */
+    static Set<String> splitLicenseSummary(Document licenseSummary, Set<String> dependencies) {
+        Set<String> licenseFiles = new HashSet<>();
+        List<Element> removed = new ArrayList<>();
+        for (Element dependency : getDependencies(licenseSummary)) {
+            if (dependencies.contains(getDependencyKey(dependency))) {
+                licenseFiles.addAll(getLicenseFiles(dependency));
+            } else {
+                removed.add(dependency);
+            }
+        }
+        for (Element dependency : removed) {
+            dependency.getParentNode().removeChild(dependency);
+        }
+        return licenseFiles;
+    }
+
+    private static List<Element> getDependencies(Document licenseSummary) {
+        NodeList elements = licenseSummary.getElementsByTagName("dependency");
+        List<Element> dependencies = new ArrayList<>(elements.getLength());
+        for (int index = 0; index < elements.getLength(); index++) {
+            dependencies.add((Element) elements.item(index));
+        }
+        return dependencies;
+    }
+
+    private static List<String> getLicenseFiles(Element dependency) {
+        NodeList files = dependency.getElementsByTagName("file");
+        List<String> licenseFiles = new ArrayList<>(files.getLength());
+        for (int file = 0; file < files.getLength(); file++) {
+            licenseFiles.add(files.item(file).getTextContent().trim());
+        }
+        return licenseFiles;
+    }
+
+    private static String getDependencyKey(Element dependency) {
+        return getKey(getChildText(dependency, "groupId"), getChildText(dependency, "artifactId"),
+                getChildText(dependency, "version"));
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static String getChildText(Element element, String name) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(child.getNodeName())) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the license summary document, {@code null} if the file is not a license summary
+     */
+    static Document readLicenseSummary(Path file) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(file.toFile());
+            return LICENSE_SUMMARY_ELEMENT.equals(document.getDocumentElement().getNodeName()) ? document : null;
+        } catch (SAXException e) {
+            return null;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to create XML parser", e);
+        }
+    }
+
+    static void writeXml(Document document, Path file) throws IOException {
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+            transformer.transform(new DOMSource(document), new StreamResult(file.toFile()));
+        } catch (TransformerException e) {
+            throw new IOException("Unable to write " + file, e);
+        }
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                if (!path.equals(directory)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
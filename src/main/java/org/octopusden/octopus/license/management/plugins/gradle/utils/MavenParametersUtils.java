@@ -11,8 +11,12 @@ public final class MavenParametersUtils {
 
     public static String getLicenseParametersProperty(Project project, String key) {
         Object mavenLicenseParametersProp = project.findProperty(MAVEN_LICENSE_PARAMETERS);
-        if (mavenLicenseParametersProp != null) {
-            String propString = mavenLicenseParametersProp.toString().replaceAll("^['\"]|['\"]$", "");
+        return mavenLicenseParametersProp != null ? getLicenseParametersProperty(mavenLicenseParametersProp.toString(), key) : null;
+    }
+
+    public static String getLicenseParametersProperty(String mavenLicenseParameters, String key) {
+        if (mavenLicenseParameters != null) {
+            String propString = mavenLicenseParameters.replaceAll("^['\"]|['\"]$", "");
             String[] parameters = propString.split("\\s+");
 
             for (String param : parameters) {
@@ -0,0 +1,305 @@
+package org.octopusden.octopus.license.management.plugins.gradle.utils;
+
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyGraph;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Distinct dependencies with their usages kept within a bounded number of records in memory.
+ * <p>
+ * Dependencies are merged in memory until {@code threshold} distinct records are held, then the records are sorted
+ * and spilled to a temporary run file. Iteration merges the runs with a k-way merge, equal records of different runs
+ * are merged into one record with the usages of all of them. The records are iterated in the coordinates order,
+ * only one record per run is held in memory while iterating.
+ */
+public final class SpillingDependencySet implements Iterable<CanonicalGAV>, Closeable {
+    private static final Comparator<String> STRINGS = Comparator.nullsFirst(Comparator.<String>naturalOrder());
+    private static final Comparator<MavenExcludeRule> EXCLUDE_RULES = Comparator
+            .comparing(MavenExcludeRule::getGroup, STRINGS)
+            .thenComparing(MavenExcludeRule::getArtifact, STRINGS);
+    private static final Comparator<List<MavenExcludeRule>> EXCLUDE_RULE_LISTS = Comparator.nullsFirst((first, second) -> {
+        for (int index = 0; index < first.size() && index < second.size(); index++) {
+            int result = EXCLUDE_RULES.compare(first.get(index), second.get(index));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(first.size(), second.size());
+    });
+
+    /**
+     * Coordinates order, records are equal in this order if and only if they are equal.
+     */
+    public static final Comparator<CanonicalGAV> COORDINATES = Comparator
+            .comparing(CanonicalGAV::getGroup, STRINGS)
+            .thenComparing(CanonicalGAV::getArtifact, STRINGS)
+            .thenComparing(CanonicalGAV::getVersion, STRINGS)
+            .thenComparing(CanonicalGAV::getClassifier, STRINGS)
+            .thenComparing(CanonicalGAV::getExtension, STRINGS)
+            .thenComparing(CanonicalGAV::getExcludeRules, EXCLUDE_RULE_LISTS);
+
+    private final File temporaryDir;
+    private final int threshold;
+    private final List<File> runs = new ArrayList<>();
+    private final List<Closeable> openRuns = new ArrayList<>();
+    private DependencyGraph dependencies = new DependencyGraph();
+
+    /**
+     * @param temporaryDir directory of the run files
+     * @param threshold    number of distinct records held in memory before they are spilled
+     */
+    public SpillingDependencySet(File temporaryDir, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Spill threshold must be positive: " + threshold);
+        }
+        this.temporaryDir = temporaryDir;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Adds the record with its usages.
+     */
+    public void add(CanonicalGAV gav) {
+        int dependency = dependencies.add(gav.getGroup(), gav.getArtifact(), gav.getVersion(), gav.getClassifier(),
+                gav.getExtension(), gav.getExcludeRules());
+        if (gav.getUsages() != null) {
+            for (DependencyUsage usage : gav.getUsages()) {
+                dependencies.addUsage(dependency, usage);
+            }
+        }
+        if (dependencies.size() >= threshold) {
+            spill();
+        }
+    }
+
+    /**
+     * @return number of the spilled run files
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * @return number of the run files held open by unfinished iterations
+     */
+    public int getOpenRunCount() {
+        return openRuns.size();
+    }
+
+    @Override
+    public Iterator<CanonicalGAV> iterator() {
+        if (runs.isEmpty()) {
+            return sorted(dependencies).iterator();
+        }
+        if (dependencies.size() > 0) {
+            spill();
+        }
+        // Equal records are taken in the order of the runs, so the usages keep the order they are added in
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+                Comparator.comparing(RunReader::getHead, COORDINATES).thenComparingInt(RunReader::getNumber));
+        // A reader closes its run at the end, so only the runs of an unfinished iteration are left to close
+        for (int number = 0; number < runs.size(); number++) {
+            RunReader reader = new RunReader(runs.get(number), number);
+            if (reader.getHead() != null) {
+                openRuns.add(reader);
+                queue.add(reader);
+            }
+        }
+        return new Iterator<CanonicalGAV>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public CanonicalGAV next() {
+                if (queue.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                CanonicalGAV merged = poll();
+                while (!queue.isEmpty() && COORDINATES.compare(queue.peek().getHead(), merged) == 0) {
+                    merged.getUsages().addAll(poll().getUsages());
+                }
+                return merged;
+            }
+
+            private CanonicalGAV poll() {
+                RunReader reader = queue.poll();
+                CanonicalGAV head = reader.next();
+                if (reader.getHead() != null) {
+                    queue.add(reader);
+                } else {
+                    openRuns.remove(reader);
+                }
+                return head;
+            }
+        };
+    }
+
+    /**
+     * Closes the runs being read and deletes the run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable run : openRuns) {
+            run.close();
+        }
+        openRuns.clear();
+        for (File run : runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        runs.clear();
+    }
+
+    private static List<CanonicalGAV> sorted(DependencyGraph dependencies) {
+        List<CanonicalGAV> records = new ArrayList<>(dependencies.getCanonicalGAVs());
+        records.sort(COORDINATES);
+        return records;
+    }
+
+    private void spill() {
+        try {
+            Files.createDirectories(temporaryDir.toPath());
+            File run = File.createTempFile("dependencies", ".run", temporaryDir);
+            runs.add(run);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.toPath())))) {
+                for (CanonicalGAV gav : sorted(dependencies)) {
+                    writeRecord(output, gav);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spill dependencies to " + temporaryDir, e);
+        }
+        dependencies = new DependencyGraph();
+    }
+
+    private static void writeRecord(DataOutputStream output, CanonicalGAV gav) throws IOException {
+        writeString(output, gav.getGroup());
+        writeString(output, gav.getArtifact());
+        writeString(output, gav.getVersion());
+        writeString(output, gav.getClassifier());
+        writeString(output, gav.getExtension());
+        if (gav.getExcludeRules() == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(gav.getExcludeRules().size());
+            for (MavenExcludeRule rule : gav.getExcludeRules()) {
+                writeString(output, rule.getGroup());
+                writeString(output, rule.getArtifact());
+            }
+        }
+        output.writeInt(gav.getUsages().size());
+        for (DependencyUsage usage : gav.getUsages()) {
+            writeString(output, usage.getProject());
+            writeString(output, usage.getConfiguration());
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a run record by record, the next record is read ahead.
+     */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream input;
+        private final int number;
+        private CanonicalGAV head;
+
+        RunReader(File run, int number) {
+            this.number = number;
+            try {
+                input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.toPath())));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read dependencies from " + run, e);
+            }
+            head = readRecord();
+        }
+
+        int getNumber() {
+            return number;
+        }
+
+        CanonicalGAV getHead() {
+            return head;
+        }
+
+        CanonicalGAV next() {
+            CanonicalGAV current = head;
+            head = readRecord();
+            return current;
+        }
+
+        private CanonicalGAV readRecord() {
+            try {
+                boolean hasGroup;
+                try {
+                    hasGroup = input.readBoolean();
+                } catch (EOFException e) {
+                    input.close();
+                    return null;
+                }
+                CanonicalGAV gav = new CanonicalGAV();
+                gav.setGroup(hasGroup ? input.readUTF() : null);
+                gav.setArtifact(readString());
+                gav.setVersion(readString());
+                gav.setClassifier(readString());
+                gav.setExtension(readString());
+                int ruleCount = input.readInt();
+                if (ruleCount >= 0) {
+                    List<MavenExcludeRule> rules = new ArrayList<>(ruleCount);
+                    for (int rule = 0; rule < ruleCount; rule++) {
+                        MavenExcludeRule excludeRule = new MavenExcludeRule();
+                        excludeRule.setGroup(readString());
+                        excludeRule.setArtifact(readString());
+                        rules.add(excludeRule);
+                    }
+                    gav.setExcludeRules(rules);
+                }
+                int usageCount = input.readInt();
+                List<DependencyUsage> usages = new ArrayList<>(usageCount);
+                for (int usage = 0; usage < usageCount; usage++) {
+                    DependencyUsage dependencyUsage = new DependencyUsage();
+                    dependencyUsage.setProject(readString());
+                    dependencyUsage.setConfiguration(readString());
+                    usages.add(dependencyUsage);
+                }
+                gav.setUsages(usages);
+                return gav;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read spilled dependencies", e);
+            }
+        }
+
+        private String readString() throws IOException {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.ConfigurationResolutionPlan;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConfigurationResolutionPlanTest {
+
+    @Test
+    void testPlanJavaConfigurations() {
+        Map<String, Collection<?>> dependencies = new LinkedHashMap<>();
+        dependencies.put("implementation", Arrays.asList("guava", "slf4j-api"));
+        dependencies.put("runtimeOnly", Collections.singletonList("logback"));
+        dependencies.put("compileClasspath", Arrays.asList("guava", "slf4j-api"));
+        dependencies.put("runtimeClasspath", Arrays.asList("guava", "slf4j-api", "logback"));
+        dependencies.put("runtimeElements", Arrays.asList("guava", "slf4j-api", "logback"));
+        dependencies.put("annotationProcessor", Collections.singletonList("lombok"));
+        dependencies.put("compileOnly", Collections.emptyList());
+
+        ConfigurationResolutionPlan plan = ConfigurationResolutionPlan.plan(dependencies);
+
+        assertEquals(new HashSet<>(Arrays.asList("annotationProcessor", "compileClasspath", "runtimeClasspath", "runtimeOnly")),
+                plan.getResolvedConfigurations());
+        assertEquals(Collections.singletonList("implementation"), plan.getCoveredConfigurations("compileClasspath"));
+        assertEquals(Collections.singletonList("runtimeElements"), plan.getCoveredConfigurations("runtimeClasspath"));
+        assertEquals(Collections.emptyList(), plan.getCoveredConfigurations("annotationProcessor"));
+        assertEquals(Collections.emptyList(), plan.getCoveredConfigurations("compileOnly"));
+        assertEquals(3, plan.getSavedResolutions());
+    }
+
+    @Test
+    void testPlanDivergingVersions() {
+        // guava 31.1 alone, upgraded to 32.1 by conflict resolution when resolved with a library depending on it
+        Map<String, Collection<?>> dependencies = new LinkedHashMap<>();
+        dependencies.put("implementation", Collections.singletonList("guava:31.1-jre"));
+        dependencies.put("runtimeClasspath", Arrays.asList("guava:31.1-jre", "library-depending-on-guava-32.1"));
+
+        ConfigurationResolutionPlan plan = ConfigurationResolutionPlan.plan(dependencies);
+
+        assertEquals(new HashSet<>(Arrays.asList("implementation", "runtimeClasspath")), plan.getResolvedConfigurations());
+        assertEquals(Collections.emptyList(), plan.getCoveredConfigurations("runtimeClasspath"));
+        assertEquals(0, plan.getSavedResolutions());
+    }
+
+    @Test
+    void testPlanOverlappingConfigurations() {
+        Map<String, Collection<?>> dependencies = new LinkedHashMap<>();
+        dependencies.put("first", Arrays.asList("a", "b"));
+        dependencies.put("second", Arrays.asList("b", "c"));
+
+        ConfigurationResolutionPlan plan = ConfigurationResolutionPlan.plan(dependencies);
+
+        assertEquals(new HashSet<>(Arrays.asList("first", "second")), plan.getResolvedConfigurations());
+        assertEquals(0, plan.getSavedResolutions());
+    }
+}
@@ -0,0 +1,87 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import groovy.json.JsonException;
+import org.junit.jupiter.api.Test;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesJson;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DependenciesJsonTest {
+
+    private static CanonicalGAV gav(String artifact, List<MavenExcludeRule> excludeRules, DependencyUsage... usages) {
+        CanonicalGAV gav = new CanonicalGAV();
+        gav.setGroup("org.example");
+        gav.setArtifact(artifact);
+        gav.setVersion("1.0");
+        gav.setExtension("jar");
+        gav.setExcludeRules(excludeRules);
+        gav.setUsages(new ArrayList<>(Arrays.asList(usages)));
+        return gav;
+    }
+
+    private static List<CanonicalGAV> read(String json, boolean readUsages) {
+        List<CanonicalGAV> dependencies = new ArrayList<>();
+        DependenciesJson.read(new StringReader(json), readUsages, dependencies::add);
+        return dependencies;
+    }
+
+    @Test
+    void testWriteRead() {
+        List<CanonicalGAV> dependencies = Arrays.asList(
+                gav("a\"quoted\"", Collections.singletonList(new MavenExcludeRule("*", "*")),
+                        new DependencyUsage("module", "runtimeClasspath"), new DependencyUsage("module", "default")),
+                gav("b", Collections.singletonList(new MavenExcludeRule("*", "*")), new DependencyUsage("module", "default")),
+                gav("c", null));
+        StringWriter writer = new StringWriter();
+        DependenciesJson.write(writer, dependencies);
+        assertTrue(writer.toString().contains("\"group\": \"*\""));
+
+        List<CanonicalGAV> read = read(writer.toString(), true);
+
+        assertEquals(dependencies, read);
+        assertEquals(dependencies.get(0).getUsages(), read.get(0).getUsages());
+        assertSame(read.get(0).getExcludeRules(), read.get(1).getExcludeRules());
+        assertNull(read.get(2).getExcludeRules());
+        assertEquals(Collections.emptyList(), read.get(2).getUsages());
+    }
+
+    @Test
+    void testReadWithoutUsages() {
+        String json = "[{\"project\": \"module\", \"group\": \"org.example\", \"artifact\": \"a\", \"version\": \"1.0\","
+                + " \"unknown\": {\"nested\": [1, true, {\"x\": null}]},"
+                + " \"usages\": [{\"project\": \"module\", \"configuration\": \"default\"}]}]";
+
+        List<CanonicalGAV> read = read(json, false);
+
+        assertEquals(1, read.size());
+        assertEquals("a", read.get(0).getArtifact());
+        assertEquals(Collections.emptyList(), read.get(0).getUsages());
+    }
+
+    @Test
+    void testReadEmpty() {
+        StringWriter writer = new StringWriter();
+        DependenciesJson.write(writer, Collections.emptyList());
+
+        assertEquals(Collections.emptyList(), read(writer.toString(), true));
+    }
+
+    @Test
+    void testReadTruncated() {
+        assertThrows(JsonException.class, () -> read("[{\"group\": \"org.example\"", true));
+    }
+}
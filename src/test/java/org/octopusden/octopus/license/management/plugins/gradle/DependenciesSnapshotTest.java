@@ -0,0 +1,91 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.DependenciesSnapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DependenciesSnapshotTest {
+
+    private static CanonicalGAV gav(String artifact, String classifier, List<MavenExcludeRule> excludeRules, DependencyUsage... usages) {
+        CanonicalGAV gav = new CanonicalGAV();
+        gav.setGroup("org.example");
+        gav.setArtifact(artifact);
+        gav.setVersion("1.0");
+        gav.setClassifier(classifier);
+        gav.setExtension("jar");
+        gav.setExcludeRules(excludeRules);
+        gav.setUsages(new ArrayList<>(Arrays.asList(usages)));
+        return gav;
+    }
+
+    private static DependenciesSnapshot writeRead(List<CanonicalGAV> dependencies) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DependenciesSnapshot.write(output, dependencies);
+        return DependenciesSnapshot.read(output.toByteArray());
+    }
+
+    @Test
+    void testWriteRead() throws IOException {
+        CanonicalGAV c = gav("c", null, null);
+        CanonicalGAV aSources = gav("a", "sources", Collections.singletonList(new MavenExcludeRule("*", "*")),
+                new DependencyUsage("module", "default"));
+        CanonicalGAV a = gav("a", null, Collections.singletonList(new MavenExcludeRule("*", "*")),
+                new DependencyUsage("module", "runtimeClasspath"), new DependencyUsage("module", "default"));
+
+        DependenciesSnapshot snapshot = writeRead(Arrays.asList(c, aSources, a));
+
+        assertEquals(3, snapshot.size());
+        List<CanonicalGAV> read = new ArrayList<>();
+        snapshot.forEach(true, read::add);
+        // Records are sorted by coordinates, a missing classifier goes first
+        assertEquals(Arrays.asList(a, aSources, c), read);
+        assertEquals(a.getUsages(), read.get(0).getUsages());
+        assertSame(read.get(0).getExcludeRules(), read.get(1).getExcludeRules());
+        assertNull(read.get(2).getExcludeRules());
+        assertEquals(Collections.emptyList(), read.get(2).getUsages());
+        assertEquals(aSources, snapshot.get(1, false));
+        assertEquals(Collections.emptyList(), snapshot.get(1, false).getUsages());
+    }
+
+    @Test
+    void testWriteSorted() throws IOException {
+        CanonicalGAV a = gav("a", null, Collections.singletonList(new MavenExcludeRule("*", "*")),
+                new DependencyUsage("module", "runtimeClasspath"));
+        CanonicalGAV aSources = gav("a", "sources", null, new DependencyUsage("module", "default"));
+        CanonicalGAV c = gav("c", null, null);
+        List<CanonicalGAV> dependencies = Arrays.asList(a, aSources, c);
+        ByteArrayOutputStream sorted = new ByteArrayOutputStream();
+        DependenciesSnapshot.writeSorted(sorted, dependencies);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DependenciesSnapshot.write(output, Arrays.asList(c, aSources, a));
+
+        assertArrayEquals(output.toByteArray(), sorted.toByteArray());
+        assertThrows(IllegalArgumentException.class,
+                () -> DependenciesSnapshot.writeSorted(new ByteArrayOutputStream(), Arrays.asList(c, a)));
+    }
+
+    @Test
+    void testWriteReadEmpty() throws IOException {
+        assertEquals(0, writeRead(Collections.emptyList()).size());
+    }
+
+    @Test
+    void testReadUnsupportedFormat() {
+        assertThrows(IOException.class, () -> DependenciesSnapshot.read("[]".getBytes()));
+    }
+}
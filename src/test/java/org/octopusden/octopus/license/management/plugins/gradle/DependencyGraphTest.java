@@ -0,0 +1,65 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ArtifactGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyGraph;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DependencyGraphTest {
+
+    @Test
+    void testAddDistinctDependencies() {
+        DependencyGraph graph = new DependencyGraph();
+        List<MavenExcludeRule> excludeAll = Collections.singletonList(new MavenExcludeRule("*", "*"));
+        int guava = graph.add("com.google.guava", "guava", "31.1-jre", null, "jar", null);
+        int guavaExcluded = graph.add("com.google.guava", "guava", "31.1-jre", null, "jar", excludeAll);
+        int sources = graph.add("com.google.guava", "guava", "31.1-jre", "sources", "jar", null);
+        graph.addUsage(guava, new DependencyUsage("app", "runtimeClasspath"));
+        graph.addUsage(guavaExcluded, new DependencyUsage("app", "extra"));
+
+        assertEquals(guava, graph.add("com.google.guava", "guava", "31.1-jre", null, "jar", null));
+        assertEquals(guavaExcluded, graph.add("com.google.guava", "guava", "31.1-jre", null, "jar",
+                Collections.singletonList(new MavenExcludeRule("*", "*"))));
+        graph.addUsage(guava, new DependencyUsage("lib", "runtimeClasspath"));
+
+        assertEquals(3, graph.size());
+        assertEquals(Arrays.asList(0, 1, 2), Arrays.asList(guava, guavaExcluded, sources));
+        assertEquals(Arrays.asList(new DependencyUsage("app", "runtimeClasspath"), new DependencyUsage("lib", "runtimeClasspath")),
+                graph.getUsages(guava));
+        assertEquals(Collections.emptyList(), graph.getUsages(sources));
+        assertSame(excludeAll, graph.getExcludeRules(guavaExcluded));
+        assertNull(graph.getExcludeRules(guava));
+        assertEquals("sources", graph.getClassifier(sources));
+
+        CanonicalGAV record = graph.getCanonicalGAVs().get(guava);
+        assertEquals("com.google.guava", record.getGroup());
+        assertEquals(graph.getUsages(guava), record.getUsages());
+        List<ArtifactGAV> artifacts = graph.getArtifacts();
+        assertEquals(new ArtifactGAV("com.google.guava", "guava", "31.1-jre", null, "jar", null), artifacts.get(guava));
+        assertNotEquals(artifacts.get(guava), artifacts.get(guavaExcluded));
+    }
+
+    @Test
+    void testAddManyDependencies() {
+        DependencyGraph graph = new DependencyGraph();
+        for (int index = 0; index < 1000; index++) {
+            assertEquals(index, graph.add("org.example", "artifact-" + index, "1.0", null, "jar", null));
+        }
+        for (int index = 0; index < 1000; index++) {
+            assertEquals(index, graph.add("org.example", "artifact-" + index, "1.0", null, "jar", null));
+            assertEquals("artifact-" + index, graph.getArtifact(index));
+        }
+        assertEquals(1000, graph.size());
+    }
+}
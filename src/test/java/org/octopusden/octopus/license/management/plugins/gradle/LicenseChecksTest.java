@@ -0,0 +1,69 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseChecks;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryIndex;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LicenseChecksTest {
+    private static final String SIMPLE = LicensesOutputSplitter.getKey("org.slf4j", "slf4j-simple", "1.7.36");
+    private static final String API = LicensesOutputSplitter.getKey("org.slf4j", "slf4j-api", "1.7.36");
+    private static final String CODEC = LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15");
+    private static final String GPL = LicensesOutputSplitter.getKey("org.example", "gpl-library", "1.0");
+
+    @TempDir
+    File temporaryDir;
+
+    private Map<String, List<String>> readLicenses(String... lines) throws IOException {
+        File thirdParty = new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE);
+        Files.write(thirdParty.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return LicenseChecks.readLicenses(thirdParty.toPath());
+    }
+
+    @Test
+    void testReadLicenses() throws IOException {
+        Map<String, List<String>> licenses = readLicenses(
+                "",
+                "Lists of 3 third-party dependencies.",
+                "     (Apache License 2.0) (MIT License) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)",
+                "     (GNU General Public License (GPL)) GPL Library (org.example:gpl-library:1.0 - no url defined)",
+                "     (Unknown license) SLF4J API Module (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)");
+
+        assertEquals(Arrays.asList(CODEC, GPL, API), Arrays.asList(licenses.keySet().toArray()));
+        assertEquals(Arrays.asList("Apache License 2.0", "MIT License"), licenses.get(CODEC));
+        assertEquals(Collections.singletonList("GNU General Public License (GPL)"), licenses.get(GPL));
+        assertEquals(Collections.singletonList(API), LicenseChecks.findMissing(licenses));
+        assertTrue(LicenseChecks.readLicenses(new File(temporaryDir, "missing.txt").toPath()).isEmpty());
+    }
+
+    @Test
+    void testFindBlacklistedTransitiveDependency() throws IOException {
+        // gpl-library is a transitive dependency resolved by Maven, the licenses of the others are aliases of whitelisted ones
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", "MIT|Apache-2.0",
+                "Apache-2.0|Apache License 2.0\nMIT|MIT License\n", "");
+        Map<String, List<String>> licenses = readLicenses(
+                "",
+                "Lists of 3 third-party dependencies.",
+                "     (GNU General Public License (GPL)) GPL Library (org.example:gpl-library:1.0 - no url defined)",
+                "     (MIT License) SLF4J Simple Binding (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)",
+                "     (Apache License 2.0) (GNU General Public License (GPL)) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)");
+
+        assertTrue(LicenseChecks.findMissing(licenses).isEmpty());
+        assertEquals(Collections.singletonMap("GNU General Public License (GPL)", Collections.singletonList(GPL)),
+                LicenseChecks.findBlacklisted(licenses, index));
+        assertTrue(LicenseChecks.findBlacklisted(Collections.singletonMap(SIMPLE, Collections.singletonList("MIT")), index).isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LicenseRegistryIndexTest {
+    private static final String WHITELIST = "MIT|Apache-2.0|BSD-3-Clause";
+    private static final String ALIASES = "Apache-2.0|Apache 2.0|Apache License 2.0\n\nMIT|MIT License\n";
+    private static final String FILE_LIST = "MIT=licenses/MIT.txt\nApache-2.0=licenses/Apache-2.0.txt\n";
+
+    @Test
+    void testParse() throws IOException {
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", WHITELIST, ALIASES, FILE_LIST);
+
+        assertEquals("hash", index.getSourceHash());
+        assertEquals(Arrays.asList("MIT", "Apache-2.0", "BSD-3-Clause"), index.getWhitelist());
+        assertEquals(Arrays.asList("Apache-2.0", "MIT"), Arrays.asList(index.getAliases().keySet().toArray()));
+        assertEquals(Arrays.asList("Apache-2.0", "Apache 2.0", "Apache License 2.0"), index.getAliases().get("Apache-2.0"));
+        assertEquals("licenses/MIT.txt", index.getLicenseFiles().get("MIT"));
+    }
+
+    @Test
+    void testGetCanonicalName() throws IOException {
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", WHITELIST, ALIASES, FILE_LIST);
+
+        assertEquals("Apache-2.0", index.getCanonicalName("Apache License 2.0"));
+        assertEquals("Apache-2.0", index.getCanonicalName("Apache-2.0"));
+        assertEquals("MIT", index.getCanonicalName("MIT License"));
+        assertNull(index.getCanonicalName("BSD-3-Clause"));
+    }
+
+    @Test
+    void testWriteRead() throws IOException {
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", WHITELIST, ALIASES, FILE_LIST);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+
+        LicenseRegistryIndex read = LicenseRegistryIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(index.getSourceHash(), read.getSourceHash());
+        assertEquals(index.getWhitelist(), read.getWhitelist());
+        assertEquals(index.getAliases(), read.getAliases());
+        assertEquals(index.getLicenseFiles(), read.getLicenseFiles());
+        assertEquals("MIT", read.getCanonicalName("MIT License"));
+    }
+
+    @Test
+    void testReadUnsupportedFormat() {
+        assertThrows(IOException.class, () -> LicenseRegistryIndex.read(new DataInputStream(new ByteArrayInputStream(new byte[8]))));
+    }
+}
@@ -0,0 +1,65 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseResultCache;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LicenseResultCacheTest {
+    private static final String DEPENDENCY = "org.slf4j:slf4j-simple:1.7.36:null:jar";
+
+    @TempDir
+    File temporaryDir;
+
+    private void write(File file, String... lines) throws IOException {
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testStoreAndWrite() throws IOException {
+        // slf4j-api is a transitive dependency of slf4j-simple resolved by Maven
+        File mavenOutput = new File(temporaryDir, "maven");
+        assertTrue(mavenOutput.mkdirs());
+        write(new File(mavenOutput, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 2 third-party dependencies.",
+                "     (MIT License) SLF4J API Module (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)",
+                "     (MIT License) SLF4J Simple Binding (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)");
+        write(new File(mavenOutput, "licenses.xml"),
+                "<licenseSummary><dependencies>",
+                "<dependency><groupId>org.slf4j</groupId><artifactId>slf4j-api</artifactId><version>1.7.36</version>",
+                "<licenses><license><name>MIT License</name><file>mit license - mit.txt</file></license></licenses></dependency>",
+                "<dependency><groupId>org.slf4j</groupId><artifactId>slf4j-simple</artifactId><version>1.7.36</version>",
+                "<licenses><license><name>MIT License</name><file>mit license - mit.txt</file></license></licenses></dependency>",
+                "</dependencies></licenseSummary>");
+        write(new File(mavenOutput, "mit license - mit.txt"), "MIT");
+
+        LicenseResultCache cache = new LicenseResultCache(new File(temporaryDir, "cache"), "configuration");
+        String key = cache.getKey(DEPENDENCY);
+        assertFalse(cache.contains(key));
+        cache.store(key, mavenOutput);
+        assertTrue(cache.contains(key));
+        assertFalse(cache.contains(cache.getKey("org.slf4j:slf4j-simple:1.7.36:null:jar -org.slf4j:slf4j-api")));
+        assertFalse(cache.contains(cache.getKey("commons-codec:commons-codec:1.15:null:jar")));
+        assertFalse(cache.contains(new LicenseResultCache(new File(temporaryDir, "cache"), "other configuration").getKey(DEPENDENCY)));
+
+        File licenses = new File(temporaryDir, "licenses");
+        assertTrue(licenses.mkdirs());
+        write(new File(licenses, "stale.txt"), "stale");
+        cache.write(key, licenses);
+        for (String file : Arrays.asList(LicensesOutputSplitter.THIRD_PARTY_FILE, "licenses.xml", "mit license - mit.txt")) {
+            assertEquals(Files.readAllLines(new File(mavenOutput, file).toPath()), Files.readAllLines(new File(licenses, file).toPath()));
+        }
+        assertFalse(new File(licenses, "stale.txt").exists());
+    }
+}
@@ -0,0 +1,232 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LicensesOutputSplitterTest {
+
+    @TempDir
+    File temporaryDir;
+
+    private void write(File file, String... lines) throws IOException {
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testSplit() throws IOException {
+        File aggregated = new File(temporaryDir, "aggregated");
+        File module = new File(temporaryDir, "module");
+        assertTrue(aggregated.mkdirs());
+        assertTrue(module.mkdirs());
+        write(new File(module, "stale.txt"), "stale");
+        write(new File(aggregated, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 2 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)");
+        write(new File(aggregated, "licenses.xml"),
+                "<licenseSummary><dependencies>",
+                "<dependency><groupId>commons-codec</groupId><artifactId>commons-codec</artifactId><version>1.15</version>",
+                "<licenses><license><name>Apache License 2.0</name><file>apache license 2.0 - license-2.0.txt</file></license></licenses></dependency>",
+                "<dependency><groupId>org.slf4j</groupId><artifactId>slf4j-api</artifactId><version>1.7.36</version>",
+                "<licenses><license><name>MIT License</name><file>mit license - mit.txt</file></license></licenses></dependency>",
+                "</dependencies></licenseSummary>");
+        write(new File(aggregated, "apache license 2.0 - license-2.0.txt"), "Apache");
+        write(new File(aggregated, "mit license - mit.txt"), "MIT");
+
+        LicensesOutputSplitter.split(aggregated, module, new HashSet<>(Collections.singletonList(
+                LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15"))));
+
+        List<String> thirdParty = Files.readAllLines(new File(module, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath());
+        assertEquals(Arrays.asList("",
+                "Lists of 1 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)"), thirdParty);
+        String licenseSummary = new String(Files.readAllBytes(new File(module, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("commons-codec"));
+        assertFalse(licenseSummary.contains("slf4j"));
+        assertTrue(new File(module, "apache license 2.0 - license-2.0.txt").isFile());
+        assertFalse(new File(module, "mit license - mit.txt").exists());
+        assertFalse(new File(module, "stale.txt").exists());
+    }
+
+    @Test
+    void testSplitTransitiveDependencies() throws IOException {
+        File aggregated = new File(temporaryDir, "aggregated");
+        File module = new File(temporaryDir, "module");
+        assertTrue(aggregated.mkdirs());
+        write(new File(aggregated, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 4 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.30 - http://www.slf4j.org)",
+                "     (MIT License) SLF4J Simple (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)",
+                "     (Apache License 2.0) Guava (com.google.guava:guava:31.1-jre - https://github.com/google/guava)");
+        // slf4j-api is resolved as 1.7.36 by Gradle, Maven mediates 1.7.30
+        Set<String> dependencies = new HashSet<>(Collections.singletonList(
+                LicensesOutputSplitter.getKey("org.slf4j", "slf4j-simple", "1.7.36")));
+        Set<String> transitiveDependencies = new HashSet<>(Arrays.asList(
+                LicensesOutputSplitter.getKey("org.slf4j", "slf4j-api", "1.7.36"),
+                LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15")));
+
+        LicensesOutputSplitter.split(aggregated, module,
+                LicensesOutputSplitter.selectDependencies(aggregated, dependencies, transitiveDependencies));
+
+        assertEquals(Arrays.asList("",
+                "Lists of 3 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.30 - http://www.slf4j.org)",
+                "     (MIT License) SLF4J Simple (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)"),
+                Files.readAllLines(new File(module, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+    }
+
+    @Test
+    void testMerge() throws IOException {
+        File target = new File(temporaryDir, "target");
+        File layer = new File(temporaryDir, "layer");
+        assertTrue(target.mkdirs());
+        assertTrue(layer.mkdirs());
+        write(new File(target, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)");
+        write(new File(layer, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.14 - https://commons.apache.org/)");
+        write(new File(target, "licenses.xml"),
+                "<licenseSummary><dependencies>",
+                "<dependency><groupId>commons-codec</groupId><artifactId>commons-codec</artifactId><version>1.15</version></dependency>",
+                "</dependencies></licenseSummary>");
+        write(new File(layer, "licenses.xml"),
+                "<licenseSummary><dependencies>",
+                "<dependency><groupId>commons-codec</groupId><artifactId>commons-codec</artifactId><version>1.14</version></dependency>",
+                "</dependencies></licenseSummary>");
+        write(new File(layer, "apache license 2.0 - license-2.0.txt"), "Apache");
+
+        LicensesOutputSplitter.merge(layer, target);
+
+        assertEquals(Arrays.asList("",
+                "Lists of 2 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.14 - https://commons.apache.org/)",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)"),
+                Files.readAllLines(new File(target, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(target, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<version>1.14</version>"));
+        assertTrue(licenseSummary.contains("<version>1.15</version>"));
+        assertTrue(new File(target, "apache license 2.0 - license-2.0.txt").isFile());
+    }
+
+    @Test
+    void testSplitParts() throws IOException {
+        File aggregated = new File(temporaryDir, "aggregated");
+        File codec = new File(temporaryDir, "codec");
+        File slf4j = new File(temporaryDir, "slf4j");
+        assertTrue(aggregated.mkdirs());
+        write(new File(aggregated, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                "",
+                "Lists of 3 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)",
+                "     (MIT License) SLF4J Simple (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)");
+        write(new File(aggregated, "licenses.xml"),
+                "<licenseSummary><dependencies>",
+                "<dependency><groupId>commons-codec</groupId><artifactId>commons-codec</artifactId><version>1.15</version>",
+                "<licenses><license><name>Apache License 2.0</name><file>apache license 2.0 - license-2.0.txt</file></license></licenses></dependency>",
+                "<dependency><groupId>org.slf4j</groupId><artifactId>slf4j-api</artifactId><version>1.7.36</version>",
+                "<licenses><license><name>MIT License</name><file>mit license - mit.txt</file></license></licenses></dependency>",
+                "<dependency><groupId>org.slf4j</groupId><artifactId>slf4j-simple</artifactId><version>1.7.36</version>",
+                "<licenses><license><name>MIT License</name><file>mit license - mit.txt</file></license></licenses></dependency>",
+                "</dependencies></licenseSummary>");
+        write(new File(aggregated, "apache license 2.0 - license-2.0.txt"), "Apache");
+        write(new File(aggregated, "mit license - mit.txt"), "MIT");
+        Map<File, Set<String>> parts = new LinkedHashMap<>();
+        parts.put(codec, new HashSet<>(Collections.singletonList(
+                LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15"))));
+        parts.put(slf4j, new HashSet<>(Arrays.asList(LicensesOutputSplitter.getKey("org.slf4j", "slf4j-simple", "1.7.36"),
+                LicensesOutputSplitter.getKey("org.slf4j", "slf4j-api", "1.7.36"))));
+
+        LicensesOutputSplitter.split(aggregated, parts);
+
+        for (Map.Entry<File, Set<String>> part : parts.entrySet()) {
+            File module = new File(temporaryDir, "module-" + part.getKey().getName());
+            LicensesOutputSplitter.split(aggregated, module, part.getValue());
+            assertEquals(Files.readAllLines(new File(module, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()),
+                    Files.readAllLines(new File(part.getKey(), LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        }
+        String codecLicenseSummary = new String(Files.readAllBytes(new File(codec, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(codecLicenseSummary.contains("commons-codec"));
+        assertFalse(codecLicenseSummary.contains("slf4j"));
+        String slf4jLicenseSummary = new String(Files.readAllBytes(new File(slf4j, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(slf4jLicenseSummary.contains("slf4j-api") && slf4jLicenseSummary.contains("slf4j-simple"));
+        assertFalse(slf4jLicenseSummary.contains("commons-codec"));
+        assertEquals(Arrays.asList("",
+                "Lists of 2 third-party dependencies.",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)",
+                "     (MIT License) SLF4J Simple (org.slf4j:slf4j-simple:1.7.36 - http://www.slf4j.org)"),
+                Files.readAllLines(new File(slf4j, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        assertTrue(new File(codec, "apache license 2.0 - license-2.0.txt").isFile());
+        assertFalse(new File(codec, "mit license - mit.txt").exists());
+        assertTrue(new File(slf4j, "mit license - mit.txt").isFile());
+        assertFalse(new File(slf4j, "apache license 2.0 - license-2.0.txt").exists());
+    }
+
+    @Test
+    void testMergeSeveral() throws IOException {
+        File target = new File(temporaryDir, "target");
+        List<File> sources = new ArrayList<>();
+        for (String version : Arrays.asList("1.14", "1.15")) {
+            File source = new File(temporaryDir, version);
+            assertTrue(source.mkdirs());
+            write(new File(source, LicensesOutputSplitter.THIRD_PARTY_FILE),
+                    "",
+                    "Lists of 1 third-party dependencies.",
+                    "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:" + version + " - https://commons.apache.org/)");
+            write(new File(source, "licenses.xml"),
+                    "<licenseSummary><dependencies>",
+                    "<dependency><groupId>commons-codec</groupId><artifactId>commons-codec</artifactId><version>" + version + "</version></dependency>",
+                    "</dependencies></licenseSummary>");
+            sources.add(source);
+        }
+
+        LicensesOutputSplitter.merge(sources, target);
+
+        assertEquals(Arrays.asList("",
+                "Lists of 2 third-party dependencies.",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.14 - https://commons.apache.org/)",
+                "     (Apache License 2.0) Commons Codec (commons-codec:commons-codec:1.15 - https://commons.apache.org/)"),
+                Files.readAllLines(new File(target, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(target, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<version>1.14</version>"));
+        assertTrue(licenseSummary.contains("<version>1.15</version>"));
+    }
+
+    @Test
+    void testSplitWithoutLicenseSummary() throws IOException {
+        File aggregated = new File(temporaryDir, "aggregated");
+        File module = new File(temporaryDir, "module");
+        assertTrue(aggregated.mkdirs());
+        write(new File(aggregated, "license.txt"), "License");
+
+        LicensesOutputSplitter.split(aggregated, module, Collections.emptySet());
+
+        assertTrue(new File(module, "license.txt").isFile());
+    }
+}
@@ -0,0 +1,180 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.ModuleLicenses;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.PomLicense;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryClient;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryIndex;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicenseRegistryMirror;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.LicensesOutputSplitter;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicenseResolver;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.PomLicensesJson;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PomLicenseResolverTest {
+
+    @TempDir
+    File temporaryDir;
+
+    private static Map<String, ModuleLicenses> codecLicenses() {
+        Map<String, ModuleLicenses> licenses = new LinkedHashMap<>();
+        licenses.put(LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15"),
+                new ModuleLicenses("Apache Commons Codec", null, Collections.singletonList(
+                        new PomLicense("Apache License, Version 2.0", "https://www.apache.org/licenses/LICENSE-2.0.txt"))));
+        return licenses;
+    }
+
+    @Test
+    void testJson() {
+        File file = new File(temporaryDir, "pom-licenses.json");
+        PomLicensesJson.write(file, codecLicenses());
+        assertEquals(codecLicenses(), PomLicensesJson.read(file));
+    }
+
+    @Test
+    void testWriteLicenses() throws IOException {
+        Files.write(new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath(), Arrays.asList(
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)"), StandardCharsets.UTF_8);
+
+        PomLicenseResolver.writeLicenses(temporaryDir, codecLicenses());
+
+        assertEquals(Arrays.asList(
+                "",
+                "Lists of 2 third-party dependencies.",
+                "     (Apache License, Version 2.0) Apache Commons Codec (commons-codec:commons-codec:1.15 - no url defined)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)"),
+                Files.readAllLines(new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(temporaryDir, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<artifactId>commons-codec</artifactId>"));
+        assertTrue(licenseSummary.contains("<name>Apache License, Version 2.0</name>"));
+    }
+
+    @Test
+    void testSelectTransitiveDependencies() {
+        String simple = LicensesOutputSplitter.getKey("org.slf4j", "slf4j-simple", "1.7.36");
+        String api = LicensesOutputSplitter.getKey("org.slf4j", "slf4j-api", "1.7.36");
+        String codec = LicensesOutputSplitter.getKey("commons-codec", "commons-codec", "1.15");
+        String internal = LicensesOutputSplitter.getKey("org.octopusden", "internal", "1.0");
+        String library = LicensesOutputSplitter.getKey("org.example", "library", "1.0");
+        String unknown = LicensesOutputSplitter.getKey("org.example", "unknown", "1.0");
+        Map<String, ModuleLicenses> pomLicenses = codecLicenses();
+        ModuleLicenses mit = new ModuleLicenses("SLF4J", null, Collections.singletonList(new PomLicense("MIT License", null)));
+        pomLicenses.put(simple, mit);
+        pomLicenses.put(api, mit);
+        pomLicenses.put(library, new ModuleLicenses("Library", null, Collections.singletonList(new PomLicense("BSD License", null))));
+        Map<String, Set<String>> graph = new HashMap<>();
+        graph.put(simple, Collections.singleton(api));
+        graph.put(internal, Collections.singleton(codec));
+        graph.put(library, Collections.singleton(unknown));
+
+        Map<String, ModuleLicenses> selected = new LinkedHashMap<>();
+        Set<String> maven = PomLicenseResolver.select(Arrays.asList(simple, internal, library), pomLicenses, graph,
+                Pattern.compile("org.octopusden"), license -> true, selected);
+
+        // The POM of the transitive dependency of library has no licenses, so library is resolved by Maven
+        assertEquals(Collections.singleton(library), maven);
+        assertEquals(Arrays.asList(simple, api, codec), Arrays.asList(selected.keySet().toArray()));
+        assertEquals(Collections.singleton(codec), PomLicenseResolver.select(Collections.singletonList(codec), pomLicenses, graph,
+                Pattern.compile("org.octopusden"), license -> false, new LinkedHashMap<>()));
+    }
+
+    @Test
+    void testWriteLicensesOfTransitiveDependencies() throws IOException {
+        // slf4j-api is listed by Maven as a transitive dependency of another dependency already
+        Files.write(new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath(), Arrays.asList(
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)"), StandardCharsets.UTF_8);
+        Map<String, ModuleLicenses> licenses = codecLicenses();
+        licenses.put(LicensesOutputSplitter.getKey("org.slf4j", "slf4j-api", "1.7.36"),
+                new ModuleLicenses("SLF4J API", null, Collections.singletonList(new PomLicense("MIT", null))));
+
+        PomLicenseResolver.writeLicenses(temporaryDir, licenses,
+                Collections.singletonMap("Apache License, Version 2.0", "Apache-2.0.txt"));
+
+        assertEquals(Arrays.asList(
+                "",
+                "Lists of 2 third-party dependencies.",
+                "     (Apache License, Version 2.0) Apache Commons Codec (commons-codec:commons-codec:1.15 - no url defined)",
+                "     (MIT License) SLF4J API (org.slf4j:slf4j-api:1.7.36 - http://www.slf4j.org)"),
+                Files.readAllLines(new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(temporaryDir, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<file>Apache-2.0.txt</file>"));
+        assertFalse(licenseSummary.contains("slf4j-api"));
+    }
+
+    @Test
+    void testWriteLicensesWithoutMavenRun() throws IOException, GitAPIException {
+        File registryDirectory = new File(temporaryDir, "registry");
+        Files.createDirectories(new File(registryDirectory, "licenses").toPath());
+        Files.write(new File(registryDirectory, "licenses/apache-2.0.txt").toPath(),
+                "Apache License text".getBytes(StandardCharsets.UTF_8));
+        try (Git git = Git.init().setDirectory(registryDirectory).call()) {
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Add license").setAuthor("test", "test@example.org").setCommitter("test", "test@example.org").call();
+        }
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", "Apache-2.0",
+                "Apache-2.0|Apache License, Version 2.0\n", "Apache-2.0=licenses/apache-2.0.txt\n");
+        // All licenses are read from POMs, so Maven has not created the output directory
+        File outputDirectory = new File(temporaryDir, "licenses");
+        Map<String, String> licenseFiles;
+        try (LicenseRegistryClient registry = new LicenseRegistryClient(new LicenseRegistryMirror(new File(temporaryDir, "cache"),
+                registryDirectory.toURI().toString(), Duration.ZERO, false, false))) {
+            licenseFiles = PomLicenseResolver.writeLicenseTexts(outputDirectory, codecLicenses(), registry, index);
+        }
+        PomLicenseResolver.writeLicenses(outputDirectory, codecLicenses(), licenseFiles);
+
+        assertEquals(Collections.singletonMap("Apache License, Version 2.0", "apache-2.0.txt"), licenseFiles);
+        assertEquals("Apache License text", new String(Files.readAllBytes(new File(outputDirectory, "apache-2.0.txt").toPath()),
+                StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList(
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (Apache License, Version 2.0) Apache Commons Codec (commons-codec:commons-codec:1.15 - no url defined)"),
+                Files.readAllLines(new File(outputDirectory, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(outputDirectory, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<file>apache-2.0.txt</file>"));
+    }
+
+    @Test
+    void testWriteLicensesWithCanonicalNames() throws IOException {
+        LicenseRegistryIndex index = LicenseRegistryIndex.parse("hash", "Apache-2.0",
+                "Apache-2.0|Apache License, Version 2.0\n", "Apache-2.0=licenses/apache-2.0.txt\n");
+
+        Map<String, ModuleLicenses> licenses = PomLicenseResolver.toCanonicalNames(codecLicenses(), index);
+        PomLicenseResolver.writeLicenses(temporaryDir, licenses, Collections.singletonMap("Apache-2.0", "apache-2.0.txt"));
+
+        assertEquals(Arrays.asList(
+                "",
+                "Lists of 1 third-party dependencies.",
+                "     (Apache-2.0) Apache Commons Codec (commons-codec:commons-codec:1.15 - no url defined)"),
+                Files.readAllLines(new File(temporaryDir, LicensesOutputSplitter.THIRD_PARTY_FILE).toPath()));
+        String licenseSummary = new String(Files.readAllBytes(new File(temporaryDir, "licenses.xml").toPath()), StandardCharsets.UTF_8);
+        assertTrue(licenseSummary.contains("<name>Apache-2.0</name>"));
+        assertTrue(licenseSummary.contains("<file>apache-2.0.txt</file>"));
+        // A license without aliases keeps its name
+        assertEquals("MIT", PomLicenseResolver.toCanonicalNames(Collections.singletonMap("key", new ModuleLicenses("Module", null,
+                Collections.singletonList(new PomLicense("MIT", null)))), index).get("key").getLicenses().get(0).getName());
+    }
+}
@@ -0,0 +1,84 @@
+package org.octopusden.octopus.license.management.plugins.gradle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.CanonicalGAV;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.DependencyUsage;
+import org.octopusden.octopus.license.management.plugins.gradle.dto.MavenExcludeRule;
+import org.octopusden.octopus.license.management.plugins.gradle.utils.SpillingDependencySet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpillingDependencySetTest {
+
+    @TempDir
+    File temporaryDir;
+
+    private static CanonicalGAV gav(String artifact, List<MavenExcludeRule> excludeRules, DependencyUsage... usages) {
+        CanonicalGAV gav = new CanonicalGAV();
+        gav.setGroup("org.example");
+        gav.setArtifact(artifact);
+        gav.setVersion("1.0");
+        gav.setExtension("jar");
+        gav.setExcludeRules(excludeRules);
+        gav.setUsages(new ArrayList<>(Arrays.asList(usages)));
+        return gav;
+    }
+
+    private static List<CanonicalGAV> toList(Iterable<CanonicalGAV> dependencies) {
+        List<CanonicalGAV> list = new ArrayList<>();
+        dependencies.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    void testMergeSpilledRuns() throws IOException {
+        List<MavenExcludeRule> excludeAll = Collections.singletonList(new MavenExcludeRule("*", "*"));
+        DependencyUsage app = new DependencyUsage("app", "runtimeClasspath");
+        DependencyUsage lib = new DependencyUsage("lib", "runtimeClasspath");
+        List<CanonicalGAV> expected = Arrays.asList(gav("a", null, lib, app), gav("a", excludeAll, app), gav("b", null, app, lib), gav("c", null, lib));
+
+        try (SpillingDependencySet dependencies = new SpillingDependencySet(temporaryDir, 2)) {
+            dependencies.add(gav("b", null, app));
+            dependencies.add(gav("a", excludeAll, app));
+            dependencies.add(gav("c", null, lib));
+            dependencies.add(gav("a", null, lib));
+            dependencies.add(gav("b", null, lib));
+            dependencies.add(gav("a", null, app));
+
+            assertEquals(3, dependencies.getRunCount());
+            List<CanonicalGAV> merged = toList(dependencies);
+            assertEquals(expected, merged);
+            assertEquals(Arrays.asList(lib, app), merged.get(0).getUsages());
+            assertNull(merged.get(0).getExcludeRules());
+            assertEquals(Arrays.asList(app, lib), merged.get(2).getUsages());
+            assertEquals(0, dependencies.getOpenRunCount());
+            assertEquals(expected, toList(dependencies));
+            assertEquals(0, dependencies.getOpenRunCount());
+            dependencies.iterator().next();
+            assertTrue(dependencies.getOpenRunCount() > 0);
+        }
+        assertEquals(0, temporaryDir.listFiles().length);
+    }
+
+    @Test
+    void testMergeInMemory() throws IOException {
+        try (SpillingDependencySet dependencies = new SpillingDependencySet(temporaryDir, 10)) {
+            dependencies.add(gav("b", null));
+            dependencies.add(gav("a", null));
+            dependencies.add(gav("b", null));
+
+            assertEquals(0, dependencies.getRunCount());
+            assertEquals(Arrays.asList(gav("a", null), gav("b", null)), toList(dependencies));
+        }
+    }
+}